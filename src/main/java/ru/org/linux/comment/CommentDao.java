@@ -15,6 +15,9 @@
 
 package ru.org.linux.comment;
 
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +27,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,8 +38,10 @@ import ru.org.linux.util.StringUtil;
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Операции над комментариями
@@ -52,6 +58,13 @@ public class CommentDao {
     "FROM comments " +
     "WHERE comments.id=?";
 
+  private static final String queryCommentsByIds = "SELECT " +
+    "postdate, topic, userid, comments.id as msgid, comments.title, " +
+    "deleted, replyto, edit_count, edit_date, editor_id, " +
+    "ua_id, comments.postip " +
+    "FROM comments " +
+    "WHERE comments.id IN (:list)";
+
   /**
    * Запрос списка комментариев для топика ВКЛЮЧАЯ удаленные
    */
@@ -72,14 +85,37 @@ public class CommentDao {
     "FROM comments " +
     "WHERE topic=?  AND NOT deleted ORDER BY msgid ASC";
 
+  /**
+   * Запрос комментариев нескольких топиков ВКЛЮЧАЯ удаленные
+   */
+  private static final String queryCommentListByTopicIds = "SELECT " +
+    "comments.title, topic, postdate, userid, comments.id as msgid, " +
+    "replyto, edit_count, edit_date, editor_id, deleted, " +
+    "ua_id, comments.postip " +
+    "FROM comments " +
+    "WHERE topic IN (:list) ORDER BY msgid ASC";
+
   private static final String replysForCommentCount = "SELECT count(id) FROM comments WHERE replyto=? AND NOT deleted";
   private static final String deleteComment = "UPDATE comments SET deleted='t' WHERE id=? AND not deleted";
 
+  private static final String updateLastComment =
+          "UPDATE topics SET last_comment_id=?, last_comment_by=?, last_comment_date=CURRENT_TIMESTAMP WHERE id=?";
+
+  private static final String clearLastComment =
+          "UPDATE topics SET last_comment_id=NULL, last_comment_by=NULL, last_comment_date=NULL WHERE id=?";
+
+  private static final String restoreLastComment =
+          "UPDATE topics SET last_comment_id=c.id, last_comment_by=c.userid, last_comment_date=c.postdate " +
+                  "FROM (SELECT id, userid, postdate FROM comments WHERE topic=? AND NOT deleted ORDER BY postdate DESC, id DESC LIMIT 1) c " +
+                  "WHERE topics.id=?";
+
   private JdbcTemplate jdbcTemplate;
+  private NamedParameterJdbcTemplate namedJdbcTemplate;
 
   @Autowired
   public void setDataSource(DataSource dataSource) {
     jdbcTemplate = new JdbcTemplate(dataSource);
+    namedJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
   }
 
   /**
@@ -133,9 +169,61 @@ public class CommentDao {
     return comments;
   }
 
+  /**
+   * Получить комментарии по списку id одним запросом
+   *
+   * @param ids id комментариев
+   * @return найденные комментарии, ключ - id комментария
+   */
+  public Map<Integer, Comment> getByIds(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    final Map<Integer, Comment> comments = Maps.newHashMapWithExpectedSize(ids.size());
+
+    namedJdbcTemplate.query(queryCommentsByIds, ImmutableMap.of("list", ids), new RowCallbackHandler() {
+      @Override
+      public void processRow(ResultSet resultSet) throws SQLException {
+        Comment comment = new Comment(resultSet);
+
+        comments.put(comment.getId(), comment);
+      }
+    });
+
+    return comments;
+  }
+
+  /**
+   * Получить комментарии нескольких топиков одним запросом, вместе с удаленными
+   *
+   * @param topicIds id топиков
+   * @return комментарии, ключ - id топика
+   */
+  public ImmutableListMultimap<Integer, Comment> getCommentsByTopicIds(Collection<Integer> topicIds) {
+    if (topicIds.isEmpty()) {
+      return ImmutableListMultimap.of();
+    }
+
+    final ImmutableListMultimap.Builder<Integer, Comment> comments = ImmutableListMultimap.builder();
+
+    namedJdbcTemplate.query(queryCommentListByTopicIds, ImmutableMap.of("list", topicIds), new RowCallbackHandler() {
+      @Override
+      public void processRow(ResultSet resultSet) throws SQLException {
+        Comment comment = new Comment(resultSet);
+
+        comments.put(comment.getTopicId(), comment);
+      }
+    });
+
+    return comments.build();
+  }
+
   /**
      * Удалить комментарий.
      *
+     * Указатель на последний комментарий топика пересчитывается
+     * в updateStatsAfterDelete, которое вызывается после удаления.
      *
    * @param msgid      идентификационнай номер комментария
    * @param reason     причина удаления
@@ -171,6 +259,18 @@ public class CommentDao {
 
     int groupId = jdbcTemplate.queryForObject("SELECT groupid FROM topics WHERE id = ?", Integer.class, topicId);
     jdbcTemplate.update("UPDATE groups SET stat1=stat1-? WHERE id = ?", count, groupId);
+
+    updateLastComment(topicId);
+  }
+
+  /**
+   * Пересчитать указатель на последний неудаленный комментарий топика
+   *
+   * @param topicId id топика
+   */
+  private void updateLastComment(int topicId) {
+    jdbcTemplate.update(clearLastComment, topicId);
+    jdbcTemplate.update(restoreLastComment, topicId, topicId);
   }
 
   /**
@@ -238,6 +338,8 @@ public class CommentDao {
       }
     );
 
+    jdbcTemplate.update(updateLastComment, msgid, comment.getUserid(), comment.getTopicId());
+
     return msgid;
   }
 
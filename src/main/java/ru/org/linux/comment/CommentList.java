@@ -16,19 +16,39 @@
 package ru.org.linux.comment;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import ru.org.linux.user.Profile;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Список комментариев топика и дерево ответов.
+ *
+ * Дерево хранится в параллельных массивах индексов в списке comments,
+ * CommentNode - только представление над ними.
+ */
 public class CommentList implements Serializable {
+  private static final int NONE = -1;
+
   private final ImmutableList<Comment> comments;
   private final CommentNode root;
-  private final ImmutableMap<Integer, CommentNode> nodeIndex;
+
+  /**
+   * id комментариев, отсортированные по возрастанию
+   */
+  private final int[] sortedIds;
+
+  /**
+   * позиции в comments для sortedIds; null если comments уже отсортирован по id
+   */
+  private final int[] positions;
+
+  private final int[] firstChild;
+  private final int[] nextSibling;
+  private final int[] depth;
+  private final int rootFirstChild;
 
   private final long lastmod;
 
@@ -37,45 +57,117 @@ public class CommentList implements Serializable {
 
     this.comments = ImmutableList.copyOf(comments);
 
-    Map<Integer, CommentNodeBuilder> tempIndex = new HashMap<>(this.comments.size());
+    int size = this.comments.size();
+
+    sortedIds = new int[size];
 
-    CommentNodeBuilder rootBuilder = new CommentNodeBuilder();
+    boolean sorted = true;
+    for (int i=0; i<size; i++) {
+      sortedIds[i] = this.comments.get(i).getId();
+
+      if (i>0 && sortedIds[i-1] >= sortedIds[i]) {
+        sorted = false;
+      }
+    }
+
+    if (sorted) {
+      positions = null;
+    } else {
+      positions = buildPositions(sortedIds);
+    }
+
+    firstChild = new int[size];
+    nextSibling = new int[size];
+    depth = new int[size];
+
+    Arrays.fill(firstChild, NONE);
+    Arrays.fill(nextSibling, NONE);
+
+    int[] lastChild = new int[size];
+    Arrays.fill(lastChild, NONE);
+
+    int first = NONE;
+    int last = NONE;
 
     /* build tree */
-    for (Comment comment : this.comments) {
-      CommentNodeBuilder node = new CommentNodeBuilder(comment);
+    for (int i=0; i<size; i++) {
+      Comment comment = this.comments.get(i);
+
+      int parentIndex = NONE;
+
+      if (comment.getReplyTo()!=0) {
+        parentIndex = indexOf(comment.getReplyTo());
 
-      tempIndex.put(comment.getId(), node);
+        // ответ на комментарий, которого нет в списке выше, показываем в корне
+        if (parentIndex>=i) {
+          parentIndex = NONE;
+        }
+      }
+
+      if (parentIndex==NONE) {
+        depth[i] = 0;
+
+        if (last==NONE) {
+          first = i;
+        } else {
+          nextSibling[last] = i;
+        }
 
-      if (comment.getReplyTo()==0) {
-        rootBuilder.addChild(node);
+        last = i;
       } else {
-        CommentNodeBuilder parentNode = tempIndex.get(comment.getReplyTo());
-        if (parentNode!=null) {
-          parentNode.addChild(node);
+        depth[i] = depth[parentIndex] + 1;
+
+        if (lastChild[parentIndex]==NONE) {
+          firstChild[parentIndex] = i;
         } else {
-          rootBuilder.addChild(node);
+          nextSibling[lastChild[parentIndex]] = i;
         }
+
+        lastChild[parentIndex] = i;
       }
     }
 
-    root = rootBuilder.build();
-
-    ImmutableMap.Builder<Integer, CommentNode> builder = ImmutableMap.builder();
-
-    buildIndex(builder, root);
+    rootFirstChild = first;
 
-    nodeIndex = builder.build();
+    root = new CommentNode(this, NONE);
   }
 
-  private static void buildIndex(ImmutableMap.Builder<Integer, CommentNode> builder, CommentNode root) {
-    if (root.getComment()!=null) {
-      builder.put(root.getComment().getId(), root);
+  /**
+   * Сортирует ids и возвращает исходные позиции отсортированных элементов
+   */
+  private static int[] buildPositions(int[] ids) {
+    long[] pairs = new long[ids.length];
+
+    for (int i=0; i<ids.length; i++) {
+      pairs[i] = ((long) ids[i] << 32) | i;
     }
 
-    for (CommentNode child : root.childs()) {
-      buildIndex(builder, child);
+    Arrays.sort(pairs);
+
+    int[] positions = new int[ids.length];
+
+    for (int i=0; i<pairs.length; i++) {
+      ids[i] = (int) (pairs[i] >> 32);
+      positions[i] = (int) pairs[i];
     }
+
+    return positions;
+  }
+
+  Comment getComment(int index) {
+    return index==NONE ? null : comments.get(index);
+  }
+
+  int getFirstChild(int index) {
+    return index==NONE ? rootFirstChild : firstChild[index];
+  }
+
+  int getNextSibling(int index) {
+    return nextSibling[index];
+  }
+
+  int getDepth(int index) {
+    return index==NONE ? NONE : depth[index];
   }
 
   @Nonnull
@@ -88,11 +180,37 @@ public class CommentList implements Serializable {
   }
 
   public CommentNode getNode(int msgid) {
-    return nodeIndex.get(msgid);
+    int index = indexOf(msgid);
+
+    if (index==NONE) {
+      return null;
+    } else {
+      return new CommentNode(this, index);
+    }
+  }
+
+  /**
+   * Позиция комментария в списке
+   *
+   * @param msgid id комментария
+   * @return позиция или -1 если комментария нет в списке
+   */
+  public int indexOf(int msgid) {
+    int found = Arrays.binarySearch(sortedIds, msgid);
+
+    if (found < 0) {
+      return NONE;
+    }
+
+    if (positions == null) {
+      return found;
+    } else {
+      return positions[found];
+    }
   }
 
   private int getCommentPage(@Nonnull Comment comment, int messages, boolean reverse) {
-    int index = comments.indexOf(comment);
+    int index = indexOf(comment.getId());
 
     if (reverse) {
       return (comments.size()-index)/messages;
@@ -25,24 +25,42 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * Узел дерева комментариев - представление над массивами CommentList
+ */
 public class CommentNode implements Serializable {
-  private final ImmutableList<CommentNode> childs;
-  private final Comment comment;
+  private final CommentList list;
+  private final int index;
 
-  public CommentNode(Comment comment, Iterable<CommentNode> childs) {
-    this.comment = comment;
-    this.childs = ImmutableList.copyOf(childs);
+  CommentNode(CommentList list, int index) {
+    this.list = list;
+    this.index = index;
   }
 
   public ImmutableList<CommentNode> childs() {
-    return childs;
+    ImmutableList.Builder<CommentNode> builder = ImmutableList.builder();
+
+    for (int child = list.getFirstChild(index); child!=-1; child = list.getNextSibling(child)) {
+      builder.add(new CommentNode(list, child));
+    }
+
+    return builder.build();
   }
 
   public boolean isHaveAnswers() {
-    return !childs.isEmpty();
+    return list.getFirstChild(index)!=-1;
+  }
+
+  /**
+   * Глубина вложенности, 0 для ответов на топик; -1 для корня дерева
+   */
+  public int getDepth() {
+    return list.getDepth(index);
   }
 
   public void hideAnonymous(UserDao userDao, Set<Integer> hideSet) throws SQLException, UserNotFoundException {
+    Comment comment = getComment();
+
     if (comment!=null) {
       User commentAuthor = userDao.getUserCached(comment.getUserid());
 
@@ -52,13 +70,15 @@ public class CommentNode implements Serializable {
     }
 
     if (comment==null || !hideSet.contains(comment.getId())) {
-      for (CommentNode child : childs) {
-        child.hideAnonymous(userDao, hideSet);
+      for (int child = list.getFirstChild(index); child!=-1; child = list.getNextSibling(child)) {
+        new CommentNode(list, child).hideAnonymous(userDao, hideSet);
       }
     }
   }
 
   public void hideIgnored(Set<Integer> hideSet, Set<Integer> ignoreList) {
+    Comment comment = getComment();
+
     if (comment != null) {
       if (comment.isIgnored(ignoreList)) {
         hideNode(hideSet);
@@ -66,33 +86,45 @@ public class CommentNode implements Serializable {
     }
 
     if (comment==null || !hideSet.contains(comment.getId())) {
-      for (CommentNode child : childs) {
-        child.hideIgnored(hideSet, ignoreList);
+      for (int child = list.getFirstChild(index); child!=-1; child = list.getNextSibling(child)) {
+        new CommentNode(list, child).hideIgnored(hideSet, ignoreList);
       }
     }
   }
 
-  public void buildList(List<Comment> list) {
+  public void buildList(List<Comment> out) {
+    buildList(list, index, out);
+  }
+
+  private static void buildList(CommentList list, int index, List<Comment> out) {
+    Comment comment = list.getComment(index);
+
     if (comment!=null) {
-      list.add(comment);
+      out.add(comment);
     }
 
-    for (CommentNode child : childs) {
-      child.buildList(list);
+    for (int child = list.getFirstChild(index); child!=-1; child = list.getNextSibling(child)) {
+      buildList(list, child, out);
     }
   }
 
   public void hideNode(Set<Integer> hideSet) {
+    hideNode(list, index, hideSet);
+  }
+
+  private static void hideNode(CommentList list, int index, Set<Integer> hideSet) {
+    Comment comment = list.getComment(index);
+
     if (comment!=null) {
       hideSet.add(comment.getId());
     }
 
-    for (CommentNode child : childs) {
-      child.hideNode(hideSet);
+    for (int child = list.getFirstChild(index); child!=-1; child = list.getNextSibling(child)) {
+      hideNode(list, child, hideSet);
     }
   }
 
   public Comment getComment() {
-    return comment;
+    return list.getComment(index);
   }
 }
@@ -15,11 +15,9 @@
 
 package ru.org.linux.comment;
 
-import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.org.linux.site.ApiDeleteInfo;
@@ -35,9 +33,7 @@ import ru.org.linux.user.*;
 import ru.org.linux.util.bbcode.LorCodeService;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 @Service
 public class CommentPrepareService {
@@ -62,25 +58,101 @@ public class CommentPrepareService {
   @Autowired
   private UserAgentDao userAgentDao;
 
+  @Autowired
+  private CommentRenderCache renderCache;
+
   private PreparedComment prepareComment(
           @Nonnull Comment comment,
           boolean secure
   ) throws UserNotFoundException {
-    MessageText messageText = msgbaseDao.getMessageText(comment.getId());
-    return prepareComment(messageText, comment, null, secure, null, null);
+    Prefetch prefetch = prefetch(ImmutableList.of(comment), null, null, false);
+
+    return prepareComment(prefetch, comment, null, secure, null, null);
+  }
+
+  /**
+   * Загрузить одним запросом на каждый вид данных всё, что нужно для подготовки
+   * списка комментариев: тексты, авторов (в том числе авторов ответов, редакторов и
+   * удаливших модераторов), информацию об удалении и user-agent
+   *
+   * @param list список комментариев
+   * @param comments дерево комментариев топика, для загрузки авторов комментариев, на которые отвечали
+   * @param viewer текущий пользователь, для загрузки его комментариев об авторах
+   * @param loadUserAgents загружать user-agent (только для модераторов)
+   * @return загруженные данные
+   */
+  private Prefetch prefetch(
+          @Nonnull List<Comment> list,
+          CommentList comments,
+          User viewer,
+          boolean loadUserAgents
+  ) throws UserNotFoundException {
+    List<Integer> msgids = new ArrayList<>(list.size());
+    List<Integer> deletedIds = new ArrayList<>();
+    Set<Integer> authorIds = new HashSet<>();
+    Set<Integer> userIds = new HashSet<>();
+    Set<Integer> userAgentIds = new HashSet<>();
+
+    for (Comment comment : list) {
+      msgids.add(comment.getId());
+      authorIds.add(comment.getUserid());
+
+      if (comments != null && comment.getReplyTo() != 0) {
+        CommentNode replyNode = comments.getNode(comment.getReplyTo());
+
+        if (replyNode != null) {
+          userIds.add(replyNode.getComment().getUserid());
+        }
+      }
+
+      if (comment.isDeleted()) {
+        deletedIds.add(comment.getId());
+      }
+
+      if (comment.getEditCount() > 0) {
+        userIds.add(comment.getEditorId());
+      }
+
+      if (loadUserAgents && comment.getUserAgentId() != 0) {
+        userAgentIds.add(comment.getUserAgentId());
+      }
+    }
+
+    Map<Integer, MessageText> texts = msgbaseDao.getMessageText(msgids);
+    Map<Integer, DeleteInfo> deleteInfos = deleteInfoDao.getDeleteInfo(deletedIds);
+
+    for (DeleteInfo info : deleteInfos.values()) {
+      userIds.add(info.getUserid());
+    }
+
+    userIds.addAll(authorIds);
+
+    Map<Integer, User> users = userDao.getUsersCachedMap(userIds);
+    Map<Integer, String> userAgents = userAgentDao.getUserAgents(userAgentIds);
+
+    Map<Integer, Remark> remarks;
+
+    if (viewer != null) {
+      remarks = userDao.getRemarks(viewer, authorIds);
+    } else {
+      remarks = ImmutableMap.of();
+    }
+
+    return new Prefetch(texts, users, deleteInfos, userAgents, remarks);
   }
 
   private PreparedComment prepareComment(
-          MessageText messageText,
+          @Nonnull Prefetch prefetch,
           @Nonnull Comment comment,
           CommentList comments,
           boolean secure,
           Template tmpl,
           Topic topic
   ) throws UserNotFoundException {
-    User author = userDao.getUserCached(comment.getUserid());
+    MessageText messageText = prefetch.getText(comment.getId());
+    User author = prefetch.getUser(comment.getUserid());
 
-    String processedMessage = prepareCommentText(messageText, secure, !topicPermissionService.followAuthorLinks(author));
+    String processedMessage = prepareCommentText(messageText, comment, secure, !topicPermissionService.followAuthorLinks(author));
 
     ReplyInfo replyInfo = null;
     boolean deletable = false;
@@ -100,7 +172,7 @@ public class CommentPrepareService {
             samePage = comments.getCommentPage(comment, tmpl.getProf()) == replyPage;
           }
 
-          String replyAuthor = userDao.getUserCached(reply.getUserid()).getNick();
+          String replyAuthor = prefetch.getUser(reply.getUserid()).getNick();
 
           replyInfo = new ReplyInfo(
                   reply.getId(),
@@ -137,7 +209,7 @@ public class CommentPrepareService {
 
     String remark = null;
     if(tmpl != null && tmpl.isSessionAuthorized() ){
-      Remark remarkObject = userDao.getRemark(tmpl.getCurrentUser(), author);
+      Remark remarkObject = prefetch.getRemark(author.getId());
 
       if (remarkObject!=null) {
         remark = remarkObject.getText();
@@ -157,16 +229,16 @@ public class CommentPrepareService {
 
     ApiUserRef ref = userService.ref(author, tmpl!=null?tmpl.getCurrentUser():null);
 
-    ApiDeleteInfo deleteInfo = loadDeleteInfo(comment);
+    ApiDeleteInfo deleteInfo = loadDeleteInfo(prefetch, comment);
 
-    EditSummary editSummary = loadEditSummary(comment);
+    EditSummary editSummary = loadEditSummary(prefetch, comment);
 
     String postIP = null;
     String userAgent = null;
 
     if (tmpl!=null && tmpl.isModeratorSession()) {
       postIP = comment.getPostIP();
-      userAgent = userAgentDao.getUserAgentById(comment.getUserAgentId());
+      userAgent = prefetch.getUserAgent(comment.getUserAgentId());
     }
 
     return new PreparedComment(comment, ref, processedMessage, replyInfo,
@@ -174,15 +246,15 @@ public class CommentPrepareService {
             postIP, userAgent);
   }
 
-  private ApiDeleteInfo loadDeleteInfo(Comment comment) throws UserNotFoundException {
+  private static ApiDeleteInfo loadDeleteInfo(Prefetch prefetch, Comment comment) throws UserNotFoundException {
     ApiDeleteInfo deleteInfo = null;
 
     if (comment.isDeleted()) {
-      DeleteInfo info = deleteInfoDao.getDeleteInfo(comment.getId());
+      DeleteInfo info = prefetch.getDeleteInfo(comment.getId());
 
       if (info!=null) {
         deleteInfo = new ApiDeleteInfo(
-                userDao.getUserCached(info.getUserid()).getNick(),
+                prefetch.getUser(info.getUserid()).getNick(),
                 info.getReason()
         );
       }
@@ -191,12 +263,12 @@ public class CommentPrepareService {
     return deleteInfo;
   }
 
-  private EditSummary loadEditSummary(Comment comment) throws UserNotFoundException {
+  private static EditSummary loadEditSummary(Prefetch prefetch, Comment comment) throws UserNotFoundException {
     EditSummary editSummary = null;
 
     if (comment.getEditCount()>0) {
       editSummary = new EditSummary(
-              userDao.getUserCached(comment.getEditorId()).getNick(),
+              prefetch.getUser(comment.getEditorId()).getNick(),
               comment.getEditDate(),
               comment.getEditCount()
       );
@@ -206,13 +278,13 @@ public class CommentPrepareService {
   }
 
   private PreparedRSSComment prepareRSSComment(
-          @Nonnull MessageText messageText,
+          @Nonnull Prefetch prefetch,
           @Nonnull Comment comment,
           boolean secure
   ) throws UserNotFoundException {
-    User author = userDao.getUserCached(comment.getUserid());
+    User author = prefetch.getUser(comment.getUserid());
 
-    String processedMessage = prepareCommentTextRSS(messageText, secure);
+    String processedMessage = prepareCommentTextRSS(prefetch.getText(comment.getId()), comment, secure);
 
     return new PreparedRSSComment(comment, author, processedMessage);
   }
@@ -255,11 +327,11 @@ public class CommentPrepareService {
           @Nonnull List<Comment> list,
           boolean secure
   ) throws UserNotFoundException {
+    Prefetch prefetch = prefetch(list, null, null, false);
+
     List<PreparedRSSComment> commentsPrepared = new ArrayList<>(list.size());
     for (Comment comment : list) {
-      MessageText messageText = msgbaseDao.getMessageText(comment.getId());
-
-      commentsPrepared.add(prepareRSSComment(messageText, comment, secure));
+      commentsPrepared.add(prepareRSSComment(prefetch, comment, secure));
     }
     return commentsPrepared;
   }
@@ -275,22 +347,16 @@ public class CommentPrepareService {
       return ImmutableList.of();
     }
 
-    Map<Integer, MessageText> texts = msgbaseDao.getMessageText(
-            Lists.newArrayList(
-                    Iterables.transform(list, new Function<Comment, Integer>() {
-                      @Override
-                      public Integer apply(Comment comment) {
-                        return comment.getId();
-                      }
-                    })
-            )
+    Prefetch prefetch = prefetch(
+            list,
+            comments,
+            tmpl.isSessionAuthorized() ? tmpl.getCurrentUser() : null,
+            tmpl.isModeratorSession()
     );
 
     List<PreparedComment> commentsPrepared = new ArrayList<>(list.size());
     for (Comment comment : list) {
-      MessageText text = texts.get(comment.getId());
-
-      commentsPrepared.add(prepareComment(text, comment, comments, secure, tmpl, topic));
+      commentsPrepared.add(prepareComment(prefetch, comment, comments, secure, tmpl, topic));
     }
     return commentsPrepared;
   }
@@ -299,12 +365,20 @@ public class CommentPrepareService {
    * Получить html представление текста комментария
    *
    * @param messageText текст комментария
+   * @param comment комментарий
    * @param secure https соединение?
    * @return строку html комментария
    */
-  private String prepareCommentText(MessageText messageText, final boolean secure, boolean nofollow) {
+  private String prepareCommentText(MessageText messageText, Comment comment, final boolean secure, boolean nofollow) {
     if (messageText.isLorcode()) {
-      return lorCodeService.parseComment(messageText.getText(), secure, nofollow);
+      String html = renderCache.get(comment, secure, nofollow, false);
+
+      if (html == null) {
+        html = lorCodeService.parseComment(messageText.getText(), secure, nofollow);
+        renderCache.put(comment, secure, nofollow, false, html);
+      }
+
+      return html;
     } else {
       return "<p>" + messageText.getText() + "</p>";
     }
@@ -314,10 +388,70 @@ public class CommentPrepareService {
    * Получить RSS представление текста комментария
    *
    * @param messageText текст комментария
+   * @param comment комментарий
    * @param secure https соединение?
    * @return строку html комментария
    */
-  private String prepareCommentTextRSS(MessageText messageText, final boolean secure) {
-    return lorCodeService.prepareTextRSS(messageText.getText(), secure, messageText.isLorcode());
+  private String prepareCommentTextRSS(MessageText messageText, Comment comment, final boolean secure) {
+    String html = renderCache.get(comment, secure, false, true);
+
+    if (html == null) {
+      html = lorCodeService.prepareTextRSS(messageText.getText(), secure, messageText.isLorcode());
+      renderCache.put(comment, secure, false, true, html);
+    }
+
+    return html;
+  }
+
+  /**
+   * Данные, загруженные для подготовки списка комментариев
+   */
+  private static class Prefetch {
+    private final Map<Integer, MessageText> texts;
+    private final Map<Integer, User> users;
+    private final Map<Integer, DeleteInfo> deleteInfos;
+    private final Map<Integer, String> userAgents;
+    private final Map<Integer, Remark> remarks;
+
+    private Prefetch(
+            Map<Integer, MessageText> texts,
+            Map<Integer, User> users,
+            Map<Integer, DeleteInfo> deleteInfos,
+            Map<Integer, String> userAgents,
+            Map<Integer, Remark> remarks
+    ) {
+      this.texts = texts;
+      this.users = users;
+      this.deleteInfos = deleteInfos;
+      this.userAgents = userAgents;
+      this.remarks = remarks;
+    }
+
+    public MessageText getText(int msgid) {
+      return texts.get(msgid);
+    }
+
+    @Nonnull
+    public User getUser(int id) throws UserNotFoundException {
+      User user = users.get(id);
+
+      if (user == null) {
+        throw new UserNotFoundException(id);
+      }
+
+      return user;
+    }
+
+    public DeleteInfo getDeleteInfo(int msgid) {
+      return deleteInfos.get(msgid);
+    }
+
+    public String getUserAgent(int id) {
+      return userAgents.get(id);
+    }
+
+    public Remark getRemark(int authorId) {
+      return remarks.get(authorId);
+    }
   }
 }
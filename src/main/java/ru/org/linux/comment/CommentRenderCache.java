@@ -0,0 +1,202 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.comment;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш html представления комментариев.
+ *
+ * Ключ - id комментария, запись хранит все варианты представления одной
+ * правки комментария. Запись для другой правки не отдается, поэтому после
+ * редактирования старое представление просто перестает использоваться;
+ * явная инвалидация нужна только чтобы не держать в памяти устаревшие записи.
+ *
+ * Время жизни ограничено, так как html зависит не только от текста:
+ * ссылки на топики и пользователей рендерятся с учетом их текущего состояния.
+ *
+ * Статистика считается по вариантам представления, а не по записям кеша:
+ * запись устаревшей правки или без нужного варианта - это промах.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=CommentRenderCache")
+public class CommentRenderCache {
+  /**
+   * Ограничение суммарного размера кеша в символах
+   */
+  private static final long MAX_WEIGHT = 32 * 1024 * 1024;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final Cache<Integer, Entry> cache =
+          CacheBuilder.newBuilder()
+                  .maximumWeight(MAX_WEIGHT)
+                  .weigher(new Weigher<Integer, Entry>() {
+                    @Override
+                    public int weigh(@Nonnull Integer key, @Nonnull Entry value) {
+                      return value.weight();
+                    }
+                  })
+                  .expireAfterWrite(30, TimeUnit.MINUTES)
+                  .removalListener(new RemovalListener<Integer, Entry>() {
+                    @Override
+                    public void onRemoval(@Nonnull RemovalNotification<Integer, Entry> notification) {
+                      if (notification.wasEvicted()) {
+                        evictions.incrementAndGet();
+                      }
+                    }
+                  })
+                  .build();
+
+  @Nullable
+  public String get(@Nonnull Comment comment, boolean secure, boolean nofollow, boolean rss) {
+    Entry entry = cache.getIfPresent(comment.getId());
+
+    String html = entry != null && entry.isVersionOf(comment) ? entry.html[variant(secure, nofollow, rss)] : null;
+
+    if (html != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+
+    return html;
+  }
+
+  public void put(@Nonnull Comment comment, boolean secure, boolean nofollow, boolean rss, @Nonnull String html) {
+    Entry entry = cache.getIfPresent(comment.getId());
+
+    if (entry == null || !entry.isVersionOf(comment)) {
+      entry = new Entry(comment);
+    }
+
+    // запись не изменяется после добавления, чтобы ее вес в кеше оставался верным
+    cache.put(comment.getId(), entry.with(variant(secure, nofollow, rss), html));
+  }
+
+  /**
+   * Удалить все варианты представления комментария
+   *
+   * @param msgid id комментария
+   */
+  public void invalidate(int msgid) {
+    cache.invalidate(msgid);
+  }
+
+  /**
+   * Удалить все варианты представления комментариев
+   *
+   * @param msgids список id комментариев
+   */
+  public void invalidate(Collection<Integer> msgids) {
+    cache.invalidateAll(msgids);
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return cache.size();
+  }
+
+  @ManagedAttribute
+  public double getHitRate() {
+    long requests = hits.get() + misses.get();
+
+    return requests == 0 ? 0 : (double) hits.get() / requests;
+  }
+
+  @ManagedAttribute
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @ManagedAttribute
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @ManagedAttribute
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  private static int variant(boolean secure, boolean nofollow, boolean rss) {
+    return (secure ? 1 : 0) | (nofollow ? 2 : 0) | (rss ? 4 : 0);
+  }
+
+  private static class Entry {
+    private final int editCount;
+    private final long editDate;
+    private final String[] html;
+
+    private Entry(Comment comment) {
+      this(comment.getEditCount(), editDate(comment), new String[8]);
+    }
+
+    private Entry(int editCount, long editDate, String[] html) {
+      this.editCount = editCount;
+      this.editDate = editDate;
+      this.html = html;
+    }
+
+    private static long editDate(Comment comment) {
+      return comment.getEditDate()!=null?comment.getEditDate().getTime():0;
+    }
+
+    private boolean isVersionOf(Comment comment) {
+      return editCount == comment.getEditCount() && editDate == editDate(comment);
+    }
+
+    private Entry with(int variant, String value) {
+      String[] copy = html.clone();
+      copy[variant] = value;
+
+      return new Entry(editCount, editDate, copy);
+    }
+
+    private int weight() {
+      int weight = 0;
+
+      for (String value : html) {
+        if (value != null) {
+          weight += value.length();
+        }
+      }
+
+      return weight;
+    }
+  }
+}
@@ -37,6 +37,7 @@ import ru.org.linux.csrf.CSRFProtectionService;
 import ru.org.linux.edithistory.EditHistoryDto;
 import ru.org.linux.edithistory.EditHistoryObjectTypeEnum;
 import ru.org.linux.edithistory.EditHistoryService;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.site.MessageNotFoundException;
 import ru.org.linux.site.ScriptErrorException;
 import ru.org.linux.site.Template;
@@ -117,6 +118,12 @@ public class CommentService {
   @Autowired
   private TopicPermissionService permissionService;
 
+  @Autowired
+  private CommentRenderCache renderCache;
+
+  @Autowired
+  private PageCache pageCache;
+
   private Cache<Integer, CommentList> cache =
           CacheBuilder.newBuilder()
           .maximumSize(10000)
@@ -342,6 +349,8 @@ public class CommentService {
     int commentId = commentDao.saveNewMessage(comment, userAgent);
     msgbaseDao.saveNewMessage(commentBody, commentId);
 
+    pageCache.topicChanged(comment.getTopicId());
+
     /* кастование пользователей */
     if (permissionService.isUserCastAllowed(author)) {
       Set<User> userRefs = lorCodeService.getReplierFromMessage(commentBody);
@@ -416,11 +425,14 @@ public class CommentService {
 
     /* Обновление времени последнего изменения топика для того, чтобы данные в кеше автоматически обновились  */
     topicDao.updateLastmod(oldComment.getTopicId(), false);
+    pageCache.topicChanged(oldComment.getTopicId());
 
     addEditHistoryItem(editor, oldComment, originalMessageText, newComment, commentBody);
 
     updateLatestEditorInfo(editor, oldComment, newComment);
 
+    renderCache.invalidate(oldComment.getId());
+
     String logMessage = makeLogString("Изменён комментарий " + oldComment.getId(), remoteAddress, xForwardedFor);
     logger.info(logMessage);
   }
@@ -515,6 +527,8 @@ public class CommentService {
     if (deleted) {
       commentDao.updateStatsAfterDelete(msgid, 1);
       userEventService.processCommentsDeleted(ImmutableList.of(msgid));
+      renderCache.invalidate(msgid);
+      commentsChanged(ImmutableList.of(msgid));
     }
 
     return deleted;
@@ -601,6 +615,8 @@ public class CommentService {
     List<Integer> deleted = deleteReplys(comment, reason, replys, user, -scoreBonus);
 
     userEventService.processCommentsDeleted(deleted);
+    renderCache.invalidate(deleted);
+    pageCache.groupChanged(topic.getGroupId());
 
     return deleted;
   }
@@ -695,6 +711,8 @@ public class CommentService {
     }
 
     userEventService.processCommentsDeleted(deletedCommentIds);
+    renderCache.invalidate(deletedCommentIds);
+    commentsChanged(deletedCommentIds);
 
     return new DeleteCommentResult(deletedTopics, deletedCommentIds, deleteInfo);
   }
@@ -762,10 +780,30 @@ public class CommentService {
     }
 
     userEventService.processCommentsDeleted(deletedCommentIds);
+    renderCache.invalidate(deletedCommentIds);
+    commentsChanged(deletedCommentIds);
 
     return deletedCommentIds;
   }
 
+  /**
+   * Сбросить в PageCache списки топиков, в которых изменились комментарии
+   * (в списках показано число комментариев)
+   *
+   * @param commentIds id комментариев
+   */
+  private void commentsChanged(Collection<Integer> commentIds) {
+    Set<Integer> topicIds = new HashSet<>();
+
+    for (Comment comment : commentDao.getByIds(commentIds).values()) {
+      topicIds.add(comment.getTopicId());
+    }
+
+    for (int topicId : topicIds) {
+      pageCache.topicChanged(topicId);
+    }
+  }
+
   /**
    * Формирование строки в лог-файл.
    *
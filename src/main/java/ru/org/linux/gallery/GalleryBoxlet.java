@@ -23,10 +23,12 @@ import ru.org.linux.spring.boxlets.AbstractBoxlet;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @Controller
 public class GalleryBoxlet extends AbstractBoxlet {
   private static final int COUNT_ITEMS = 3;
+  private static final long TTL = 60 * 1000;
   @Autowired
   private ImageDao imageDao;
 
@@ -35,7 +37,12 @@ public class GalleryBoxlet extends AbstractBoxlet {
   protected ModelAndView getData(HttpServletRequest request) throws Exception {
     ModelAndView mav = new ModelAndView();
     mav.setViewName("boxlets/gallery");
-    List<PreparedGalleryItem> list = imageDao.prepare(imageDao.getGalleryItems(COUNT_ITEMS));
+    List<PreparedGalleryItem> list = cached("", TTL, new Callable<List<PreparedGalleryItem>>() {
+      @Override
+      public List<PreparedGalleryItem> call() {
+        return imageDao.prepare(imageDao.getGalleryItems(COUNT_ITEMS));
+      }
+    });
     mav.addObject("items", list);
     return mav;
   }
@@ -22,6 +22,7 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.org.linux.edithistory.EditHistoryDto;
 import ru.org.linux.edithistory.EditHistoryObjectTypeEnum;
 import ru.org.linux.edithistory.EditHistoryService;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.topic.TopicDao;
 import ru.org.linux.user.User;
 
@@ -36,6 +37,9 @@ public class ImageService {
   @Autowired
   private TopicDao topicDao;
 
+  @Autowired
+  private PageCache pageCache;
+
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public void deleteImage(User editor, Image image) {
     EditHistoryDto info = new EditHistoryDto();
@@ -49,5 +53,6 @@ public class ImageService {
 
     editHistoryService.insert(info);
     topicDao.updateLastmod(image.getTopicId(), false);
+    pageCache.topicChanged(image.getTopicId());
   }
 }
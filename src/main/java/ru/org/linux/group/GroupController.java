@@ -27,11 +27,13 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.view.RedirectView;
 import ru.org.linux.auth.AccessViolationException;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.section.Section;
 import ru.org.linux.section.SectionService;
 import ru.org.linux.site.Template;
 import ru.org.linux.spring.SiteConfig;
 import ru.org.linux.topic.ArchiveDao;
+import ru.org.linux.topic.TopicListCursor;
 import ru.org.linux.topic.TopicTagService;
 import ru.org.linux.user.IgnoreListDao;
 import ru.org.linux.user.User;
@@ -48,8 +50,6 @@ import java.util.*;
 
 @Controller
 public class GroupController {
-  public static final int MAX_OFFSET = 300;
-
   @Autowired
   private GroupDao groupDao;
 
@@ -77,6 +77,9 @@ public class GroupController {
   @Autowired
   private SiteConfig siteConfig;
 
+  @Autowired
+  private PageCache pageCache;
+
   private JdbcTemplate jdbcTemplate;
 
   @Autowired
@@ -86,30 +89,20 @@ public class GroupController {
 
   @RequestMapping("/group.jsp")
   public ModelAndView topics(
-          @RequestParam("group") int groupId,
-          @RequestParam(value = "offset", required = false) Integer offsetObject
+          @RequestParam("group") int groupId
   ) throws Exception {
     Group group = groupDao.getGroup(groupId);
 
-    if (offsetObject != null) {
-      return new ModelAndView(new RedirectView(group.getUrl() + "?offset=" + offsetObject.toString()));
-    } else {
-      return new ModelAndView(new RedirectView(group.getUrl()));
-    }
+    return new ModelAndView(new RedirectView(group.getUrl()));
   }
 
   @RequestMapping("/group-lastmod.jsp")
   public ModelAndView topicsLastmod(
-          @RequestParam("group") int groupId,
-          @RequestParam(value = "offset", required = false) Integer offsetObject
+          @RequestParam("group") int groupId
   ) throws Exception {
     Group group = groupDao.getGroup(groupId);
 
-    if (offsetObject != null) {
-      return new ModelAndView(new RedirectView(group.getUrl() + "?offset=" + offsetObject.toString() + "&lastmod=true"));
-    } else {
-      return new ModelAndView(new RedirectView(group.getUrl() + "?lastmod=true"));
-    }
+    return new ModelAndView(new RedirectView(group.getUrl() + "?lastmod=true"));
   }
 
   @RequestMapping("/forum/{group}/{year:\\d+}/{month:\\d+}")
@@ -121,18 +114,18 @@ public class GroupController {
     HttpServletRequest request,
     HttpServletResponse response
   ) throws Exception {
-    return forum(groupName, offset, false, request, response, year, month);
+    return forum(groupName, offset, null, false, request, response, year, month);
   }
 
   @RequestMapping("/forum/{group}")
   public ModelAndView forum(
     @PathVariable("group") String groupName,
-    @RequestParam(defaultValue = "0", value="offset") int offset,
+    @RequestParam(value = TopicListCursor.PARAMETER, required = false) String cursor,
     @RequestParam(defaultValue = "false") boolean lastmod,
     HttpServletRequest request,
     HttpServletResponse response
   ) throws Exception {
-    return forum(groupName, offset, lastmod, request, response, null, null);
+    return forum(groupName, 0, TopicListCursor.parse(cursor), lastmod, request, response, null, null);
   }
 
   private List<TopicsListItem> getStickyTopics(
@@ -149,14 +142,14 @@ public class GroupController {
   }
 
   // TODO: move to dao/service
-  private List<TopicsListItem> getTopics(
+  private SqlRowSet getTopics(
           Group group,
-          int messagesInPage,
           boolean lastmod,
           Integer year,
           Integer month,
           int topics,
           int offset,
+          @Nullable TopicListCursor cursor,
           boolean showDeleted,
           boolean showIgnored,
           @Nullable User currentUser
@@ -171,7 +164,7 @@ public class GroupController {
 
    String delq = showDeleted ? "" : " AND NOT deleted ";
 
-    String q = "SELECT topics.title as subj, lastmod, userid, topics.id as msgid, deleted, topics.stat1, topics.stat3, topics.stat4, topics.sticky, topics.resolved " +
+    String q = "SELECT topics.title as subj, postdate, lastmod, userid, topics.id as msgid, deleted, topics.stat1, topics.stat3, topics.stat4, topics.sticky, topics.resolved " +
             "FROM topics WHERE NOT draft AND NOT sticky AND topics.groupid=" + group.getId() + delq;
 
     if (year!=null) {
@@ -192,23 +185,39 @@ public class GroupController {
       }
     }
 
-    SqlRowSet rs;
+    String sortColumn = lastmod ? "lastmod" : "postdate";
+
+    if (year==null) {
+      if (cursor!=null) {
+        q += " AND (" + sortColumn + ", topics.id) < (?, ?) ";
 
-    if (!lastmod) {
-      if (year==null) {
-        if (offset==0) {
-          q += " AND postdate>CURRENT_TIMESTAMP-'3 month'::interval ";
-        }
+        return jdbcTemplate.queryForRowSet(
+                q + ignq + " ORDER BY " + sortColumn + " DESC, topics.id DESC LIMIT " + topics,
+                cursor.getTime(),
+                cursor.getId()
+        );
+      }
 
-        rs = jdbcTemplate.queryForRowSet(q + ignq + " ORDER BY postdate DESC LIMIT " + topics + " OFFSET " + offset);
-      } else {
-        rs = jdbcTemplate.queryForRowSet(q + ignq + " ORDER BY postdate DESC LIMIT " + topics + " OFFSET " + offset);
+      if (!lastmod) {
+        q += " AND postdate>CURRENT_TIMESTAMP-'3 month'::interval ";
       }
+
+      return jdbcTemplate.queryForRowSet(q + ignq + " ORDER BY " + sortColumn + " DESC, topics.id DESC LIMIT " + topics);
     } else {
-      rs = jdbcTemplate.queryForRowSet(q + ignq + " ORDER BY lastmod DESC LIMIT " + topics + " OFFSET " + offset);
+      return jdbcTemplate.queryForRowSet(q + ignq + " ORDER BY " + sortColumn + " DESC LIMIT " + topics + " OFFSET " + offset);
     }
+  }
 
-    return prepareTopic(rs, messagesInPage);
+  /**
+   * Курсор следующей страницы по последней строке выборки getTopics
+   */
+  @Nullable
+  private static TopicListCursor nextCursor(SqlRowSet rs, boolean lastmod) {
+    if (!rs.last()) {
+      return null;
+    }
+
+    return TopicListCursor.of(rs.getTimestamp(lastmod ? "lastmod" : "postdate"), rs.getInt("msgid"));
   }
 
   private List<TopicsListItem> prepareTopic(
@@ -233,9 +242,10 @@ public class GroupController {
   }
 
   private ModelAndView forum(
-    @PathVariable("group") String groupName,
-    @RequestParam(defaultValue = "0", value="offset") int offset,
-    @RequestParam(defaultValue = "false") boolean lastmod,
+    String groupName,
+    int offset,
+    @Nullable TopicListCursor cursor,
+    boolean lastmod,
     HttpServletRequest request,
     HttpServletResponse response,
     Integer year,
@@ -260,20 +270,14 @@ public class GroupController {
       throw new AccessViolationException("Вы не авторизованы");
     }
 
-    boolean firstPage;
-
-    if (offset != 0) {
-      firstPage = false;
+    if (offset < 0) {
+      throw new ServletParameterBadValueException("offset", "offset не может быть отрицательным");
+    }
 
-      if (offset < 0) {
-        throw new ServletParameterBadValueException("offset", "offset не может быть отрицательным");
-      }
+    boolean firstPage = offset == 0 && cursor == null;
 
-      if (year == null && offset>MAX_OFFSET) {
-        return new ModelAndView(new RedirectView(group.getUrl()+"archive"));
-      }
-    } else {
-      firstPage = true;
+    if (!tmpl.isSessionAuthorized() && !showDeleted) {
+      pageCache.cacheGroupPage(request, group);
     }
 
     params.put("firstPage", firstPage);
@@ -325,20 +329,22 @@ public class GroupController {
       params.put("url", group.getUrl());
     }
 
-    List<TopicsListItem> mainTopics = getTopics(
+    SqlRowSet rs = getTopics(
             group,
-            tmpl.getProf().getMessages(),
             lastmod,
             year,
             month,
             tmpl.getProf().getTopics(),
             offset,
+            cursor,
             showDeleted,
             showIgnored,
             tmpl.getCurrentUser()
     );
 
-    if (year==null && offset==0 && !lastmod) {
+    List<TopicsListItem> mainTopics = prepareTopic(rs, tmpl.getProf().getMessages());
+
+    if (firstPage && year==null && !lastmod) {
       List<TopicsListItem> stickyTopics = getStickyTopics(group, tmpl.getProf().getMessages());
 
       params.put("topicsList",  Lists.newArrayList(Iterables.concat(stickyTopics, mainTopics)));
@@ -348,8 +354,11 @@ public class GroupController {
 
     if (year != null) {
       params.put("hasNext", offset + tmpl.getProf().getTopics() < archiveDao.getArchiveCount(group.getId(), year, month));
+    } else if (mainTopics.size()==tmpl.getProf().getTopics()) {
+      params.put("nextCursor", nextCursor(rs, lastmod));
+      params.put("hasNext", true);
     } else {
-      params.put("hasNext", offset<MAX_OFFSET && mainTopics.size()==tmpl.getProf().getTopics());
+      params.put("hasNext", false);
     }
 
     params.put("addable", groupPermissionService.isTopicPostingAllowed(group, tmpl.getCurrentUser()));
@@ -0,0 +1,71 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.pagecache;
+
+import com.google.common.collect.ImmutableListMultimap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Закешированная страница. Код защиты CSRF в тексте заменен на метку,
+ * вместо которой при отдаче подставляется код текущего пользователя.
+ * Заголовки, установленные при подготовке страницы, отдаются вместе с ней.
+ */
+class CachedPage {
+  private final String body;
+  private final String contentType;
+  private final String etag;
+  private final ImmutableListMultimap<String, String> headers;
+  private final PageDependency dependency;
+
+  CachedPage(
+          String body,
+          String contentType,
+          @Nullable String etag,
+          ImmutableListMultimap<String, String> headers,
+          PageDependency dependency
+  ) {
+    this.body = body;
+    this.contentType = contentType;
+    this.etag = etag;
+    this.headers = headers;
+    this.dependency = dependency;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  @Nullable
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @return заголовки ответа, кроме Etag, Content-Type и Content-Length
+   */
+  public ImmutableListMultimap<String, String> getHeaders() {
+    return headers;
+  }
+
+  public PageDependency getDependency() {
+    return dependency;
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.pagecache;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Передает ответ клиенту как обычно и одновременно запоминает текст страницы
+ * и установленные заголовки. Текст запоминается, только если к началу вывода
+ * контроллер пометил страницу как кешируемую; остальные ответы передаются
+ * без копирования. Ответы с ошибкой, перенаправлением, двоичными данными,
+ * cookie или слишком большие не запоминаются.
+ */
+class CapturingResponseWrapper extends HttpServletResponseWrapper {
+  private static final int MAX_LENGTH = 1024 * 1024;
+
+  /**
+   * Заголовки, которые не повторяются из кеша: Etag и тип содержимого
+   * хранятся отдельно, длина зависит от подставленного кода CSRF, а число
+   * SQL запросов относится только к запросу, который построил страницу
+   */
+  private static final Set<String> SKIP_HEADERS =
+          ImmutableSet.of("etag", "content-type", "content-length", "x-sql-queries");
+
+  private final HttpServletRequest request;
+  private final StringBuilder captured = new StringBuilder();
+  private final Set<String> headerNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+  private PrintWriter writer;
+  private boolean cacheable = true;
+  private int status = SC_OK;
+
+  CapturingResponseWrapper(HttpServletRequest request, HttpServletResponse response) {
+    super(response);
+    this.request = request;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      if (cacheable && request.getAttribute(PageCache.DEPENDENCY_ATTRIBUTE) != null) {
+        writer = new PrintWriter(new TeeWriter(super.getWriter()));
+      } else {
+        discard();
+        writer = super.getWriter();
+      }
+    }
+
+    return writer;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    discard();
+
+    return super.getOutputStream();
+  }
+
+  @Override
+  public void setStatus(int sc) {
+    status = sc;
+    super.setStatus(sc);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void setStatus(int sc, String sm) {
+    status = sc;
+    super.setStatus(sc, sm);
+  }
+
+  @Override
+  public void sendError(int sc) throws IOException {
+    status = sc;
+    super.sendError(sc);
+  }
+
+  @Override
+  public void sendError(int sc, String msg) throws IOException {
+    status = sc;
+    super.sendError(sc, msg);
+  }
+
+  @Override
+  public void sendRedirect(String location) throws IOException {
+    status = SC_FOUND;
+    super.sendRedirect(location);
+  }
+
+  @Override
+  public void addCookie(Cookie cookie) {
+    discard();
+    super.addCookie(cookie);
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    header(name);
+    super.setHeader(name, value);
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    header(name);
+    super.addHeader(name, value);
+  }
+
+  @Override
+  public void setDateHeader(String name, long date) {
+    header(name);
+    super.setDateHeader(name, date);
+  }
+
+  @Override
+  public void addDateHeader(String name, long date) {
+    header(name);
+    super.addDateHeader(name, date);
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+    header(name);
+    super.setIntHeader(name, value);
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+    header(name);
+    super.addIntHeader(name, value);
+  }
+
+  @Override
+  public void reset() {
+    captured.setLength(0);
+    headerNames.clear();
+    super.reset();
+  }
+
+  @Override
+  public void resetBuffer() {
+    captured.setLength(0);
+    super.resetBuffer();
+  }
+
+  public boolean isCacheable() {
+    return cacheable && status == SC_OK;
+  }
+
+  /**
+   * @return текст страницы, переданный клиенту
+   */
+  public String getCaptured() {
+    if (writer != null) {
+      writer.flush();
+    }
+
+    return captured.toString();
+  }
+
+  /**
+   * @return заголовки, установленные при подготовке страницы, в том виде,
+   * в котором они переданы клиенту
+   */
+  public ImmutableListMultimap<String, String> getCapturedHeaders() {
+    ImmutableListMultimap.Builder<String, String> headers = ImmutableListMultimap.builder();
+
+    for (String name : headerNames) {
+      if (!SKIP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+        headers.putAll(name, getHeaders(name));
+      }
+    }
+
+    return headers.build();
+  }
+
+  private void header(String name) {
+    if ("Set-Cookie".equalsIgnoreCase(name)) {
+      discard();
+    }
+
+    headerNames.add(name);
+  }
+
+  private void discard() {
+    cacheable = false;
+    captured.setLength(0);
+    captured.trimToSize();
+  }
+
+  private class TeeWriter extends Writer {
+    private final Writer out;
+
+    private TeeWriter(Writer out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      out.write(cbuf, off, len);
+
+      if (cacheable) {
+        if (captured.length() + len > MAX_LENGTH) {
+          discard();
+        } else {
+          captured.append(cbuf, off, len);
+        }
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
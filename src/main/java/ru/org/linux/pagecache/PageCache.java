@@ -0,0 +1,300 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.pagecache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AtomicLongMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.org.linux.group.Group;
+import ru.org.linux.group.GroupDao;
+import ru.org.linux.topic.Topic;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш готовых страниц для анонимных пользователей.
+ *
+ * Контроллер помечает страницу как кешируемую, указывая от чего она зависит:
+ * от времени изменения топика или от поколения групп и разделов. Поколение
+ * увеличивается при любом изменении топиков группы (см. TopicService), поэтому
+ * устаревшие списки топиков перестают отдаваться из кеша сразу после изменения.
+ *
+ * Время жизни записей ограничено: на странице есть данные, изменение
+ * которых не отслеживается (боковые блоки, профили пользователей), а поколения
+ * групп локальны для каждого узла.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=PageCache")
+public class PageCache {
+  static final String DEPENDENCY_ATTRIBUTE = PageCache.class.getName() + ".dependency";
+
+  /**
+   * Ограничение суммарного размера кеша в символах
+   */
+  private static final long MAX_WEIGHT = 64 * 1024 * 1024;
+
+  private static final String queryTopicLastmod = "SELECT lastmod FROM topics WHERE id=? AND NOT deleted";
+  private static final String queryTopicGroup = "SELECT groupid FROM topics WHERE id=?";
+
+  private final Cache<PageKey, CachedPage> cache =
+          CacheBuilder.newBuilder()
+                  .maximumWeight(MAX_WEIGHT)
+                  .weigher(new Weigher<PageKey, CachedPage>() {
+                    @Override
+                    public int weigh(@Nonnull PageKey key, @Nonnull CachedPage value) {
+                      return value.getBody().length();
+                    }
+                  })
+                  .expireAfterWrite(10, TimeUnit.MINUTES)
+                  .recordStats()
+                  .build();
+
+  private final AtomicLongMap<Integer> groupGenerations = AtomicLongMap.create();
+  private final AtomicLongMap<Integer> sectionGenerations = AtomicLongMap.create();
+
+  private final AtomicLong stale = new AtomicLong();
+
+  @Autowired
+  private GroupDao groupDao;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public void setDataSource(DataSource dataSource) {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  /**
+   * Разрешить кеширование страницы топика. Страница действительна,
+   * пока не изменилось время модификации топика.
+   *
+   * @param request текущий запрос
+   * @param topic отображаемый топик
+   */
+  public void cacheTopicPage(@Nonnull HttpServletRequest request, @Nonnull Topic topic) {
+    request.setAttribute(
+            DEPENDENCY_ATTRIBUTE,
+            new PageDependency(
+                    topic.getId(),
+                    topic.getLastModified().getTime(),
+                    ImmutableMap.<Integer, Long>of(),
+                    ImmutableMap.<Integer, Long>of()
+            )
+    );
+  }
+
+  /**
+   * Разрешить кеширование списка топиков группы. Вызывается до выборки топиков,
+   * чтобы изменение во время подготовки страницы сделало ее недействительной.
+   *
+   * @param request текущий запрос
+   * @param group отображаемая группа
+   */
+  public void cacheGroupPage(@Nonnull HttpServletRequest request, @Nonnull Group group) {
+    request.setAttribute(
+            DEPENDENCY_ATTRIBUTE,
+            new PageDependency(
+                    0,
+                    0,
+                    ImmutableMap.of(group.getId(), groupGenerations.get(group.getId())),
+                    ImmutableMap.<Integer, Long>of()
+            )
+    );
+  }
+
+  /**
+   * Разрешить кеширование страницы со списками топиков из разделов.
+   * Вызывается до выборки топиков.
+   *
+   * @param request текущий запрос
+   * @param sectionIds отображаемые разделы
+   */
+  public void cacheSectionPage(@Nonnull HttpServletRequest request, int... sectionIds) {
+    ImmutableMap.Builder<Integer, Long> sections = ImmutableMap.builder();
+
+    for (int sectionId : sectionIds) {
+      sections.put(sectionId, sectionGenerations.get(sectionId));
+    }
+
+    request.setAttribute(
+            DEPENDENCY_ATTRIBUTE,
+            new PageDependency(
+                    0,
+                    0,
+                    ImmutableMap.<Integer, Long>of(),
+                    sections.build()
+            )
+    );
+  }
+
+  /**
+   * Топики группы изменились: списки топиков группы и ее раздела устарели
+   *
+   * @param groupId id группы
+   */
+  public void groupChanged(final int groupId) {
+    final int sectionId = groupDao.getGroup(groupId).getSectionId();
+
+    bump(groupId, sectionId);
+
+    // страница, подготовленная до завершения транзакции, могла попасть
+    // в кеш уже с новым поколением
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          bump(groupId, sectionId);
+        }
+      });
+    }
+  }
+
+  /**
+   * Топик изменился без изменения его времени модификации
+   * (например, добавлен комментарий): списки топиков его группы устарели
+   *
+   * @param topicId id топика
+   */
+  public void topicChanged(int topicId) {
+    for (int groupId : jdbcTemplate.queryForList(queryTopicGroup, Integer.class, topicId)) {
+      groupChanged(groupId);
+    }
+  }
+
+  /**
+   * Текущее поколение раздела: меняется при любом изменении топиков раздела
+   *
+   * @param sectionId id раздела
+   * @return номер поколения
+   */
+  public long getSectionGeneration(int sectionId) {
+    return sectionGenerations.get(sectionId);
+  }
+
+  private void bump(int groupId, int sectionId) {
+    groupGenerations.incrementAndGet(groupId);
+    sectionGenerations.incrementAndGet(sectionId);
+  }
+
+  @Nullable
+  PageDependency getDependency(@Nonnull HttpServletRequest request) {
+    return (PageDependency) request.getAttribute(DEPENDENCY_ATTRIBUTE);
+  }
+
+  /**
+   * Получить действительную страницу из кеша
+   *
+   * @param key ключ страницы
+   * @return страница или null, если ее нет или она устарела
+   */
+  @Nullable
+  CachedPage get(@Nonnull PageKey key) {
+    CachedPage page = cache.getIfPresent(key);
+
+    if (page == null) {
+      return null;
+    }
+
+    if (!isValid(page.getDependency())) {
+      stale.incrementAndGet();
+      cache.invalidate(key);
+      return null;
+    }
+
+    return page;
+  }
+
+  void put(@Nonnull PageKey key, @Nonnull CachedPage page) {
+    cache.put(key, page);
+  }
+
+  private boolean isValid(PageDependency dependency) {
+    for (Map.Entry<Integer, Long> entry : dependency.getGroups().entrySet()) {
+      if (groupGenerations.get(entry.getKey()) != entry.getValue()) {
+        return false;
+      }
+    }
+
+    for (Map.Entry<Integer, Long> entry : dependency.getSections().entrySet()) {
+      if (sectionGenerations.get(entry.getKey()) != entry.getValue()) {
+        return false;
+      }
+    }
+
+    if (dependency.getTopicId() != 0) {
+      List<Timestamp> lastmod = jdbcTemplate.queryForList(queryTopicLastmod, Timestamp.class, dependency.getTopicId());
+
+      return !lastmod.isEmpty() && lastmod.get(0).getTime() == dependency.getTopicLastmod();
+    }
+
+    return true;
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return cache.size();
+  }
+
+  @ManagedAttribute
+  public double getHitRate() {
+    long requests = cache.stats().requestCount();
+
+    return requests == 0 ? 0 : (double) getHitCount() / requests;
+  }
+
+  @ManagedAttribute
+  public long getHitCount() {
+    return cache.stats().hitCount() - stale.get();
+  }
+
+  @ManagedAttribute
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  @ManagedAttribute
+  public long getStaleCount() {
+    return stale.get();
+  }
+
+  @ManagedAttribute
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.pagecache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.filter.GenericFilterBean;
+import ru.org.linux.auth.AuthUtil;
+import ru.org.linux.csrf.CSRFProtectionService;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Отдает анонимным пользователям страницы из PageCache и сохраняет в него
+ * страницы, которые контроллер пометил как кешируемые.
+ *
+ * Должен стоять после SecurityFilter: используется код CSRF текущего пользователя
+ * и признак авторизации.
+ */
+public class PageCacheFilter extends GenericFilterBean {
+  /**
+   * Метка на месте кода CSRF в закешированной странице
+   */
+  private static final String CSRF_PLACEHOLDER = "\u0000csrf\u0000";
+
+  /**
+   * Формат кода, который выдает CSRFProtectionService. Страницы с кодами другого
+   * вида (пришедшими в cookie от клиента) не кешируются и не отдаются из кеша:
+   * такой код может совпасть с обычным текстом страницы.
+   */
+  private static final Pattern CSRF_TOKEN = Pattern.compile("[A-Za-z0-9+/]{22}==");
+
+  @Autowired
+  private PageCache pageCache;
+
+  @Override
+  public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) req;
+    HttpServletResponse response = (HttpServletResponse) res;
+
+    String token = (String) request.getAttribute(CSRFProtectionService.CSRF_ATTRIBUTE);
+
+    if (!"GET".equals(request.getMethod()) ||
+            request.getDispatcherType() != DispatcherType.REQUEST ||
+            token == null ||
+            !CSRF_TOKEN.matcher(token).matches() ||
+            AuthUtil.isSessionAuthorized()) {
+      chain.doFilter(req, res);
+      return;
+    }
+
+    PageKey key = new PageKey(request);
+
+    CachedPage page = pageCache.get(key);
+
+    if (page != null) {
+      write(page, token, request, response);
+      return;
+    }
+
+    CapturingResponseWrapper wrapper = new CapturingResponseWrapper(request, response);
+
+    chain.doFilter(request, wrapper);
+
+    PageDependency dependency = pageCache.getDependency(request);
+
+    if (dependency != null && wrapper.isCacheable() && response.getContentType() != null) {
+      String body = wrapper.getCaptured();
+
+      if (!body.isEmpty()) {
+        pageCache.put(
+                key,
+                new CachedPage(
+                        body.replace(token, CSRF_PLACEHOLDER),
+                        response.getContentType(),
+                        response.getHeader("Etag"),
+                        wrapper.getCapturedHeaders(),
+                        dependency
+                )
+        );
+      }
+    }
+  }
+
+  private static void write(
+          CachedPage page,
+          String token,
+          HttpServletRequest request,
+          HttpServletResponse response
+  ) throws IOException {
+    for (Map.Entry<String, String> header : page.getHeaders().entries()) {
+      response.addHeader(header.getKey(), header.getValue());
+    }
+
+    if (page.getEtag() != null) {
+      response.setHeader("Etag", page.getEtag());
+
+      if (page.getEtag().equals(request.getHeader("If-None-Match"))) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+    }
+
+    response.setContentType(page.getContentType());
+    response.getWriter().write(page.getBody().replace(CSRF_PLACEHOLDER, token));
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.pagecache;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * От чего зависит закешированная страница: время изменения топика
+ * и поколения групп и разделов на момент подготовки страницы
+ */
+class PageDependency {
+  private final int topicId;
+  private final long topicLastmod;
+  private final ImmutableMap<Integer, Long> groups;
+  private final ImmutableMap<Integer, Long> sections;
+
+  PageDependency(int topicId, long topicLastmod, ImmutableMap<Integer, Long> groups, ImmutableMap<Integer, Long> sections) {
+    this.topicId = topicId;
+    this.topicLastmod = topicLastmod;
+    this.groups = groups;
+    this.sections = sections;
+  }
+
+  /**
+   * @return id топика или 0, если страница не зависит от топика
+   */
+  public int getTopicId() {
+    return topicId;
+  }
+
+  public long getTopicLastmod() {
+    return topicLastmod;
+  }
+
+  public ImmutableMap<Integer, Long> getGroups() {
+    return groups;
+  }
+
+  public ImmutableMap<Integer, Long> getSections() {
+    return sections;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.pagecache;
+
+import com.google.common.base.Objects;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Ключ страницы в кеше: полный адрес запроса и признак https
+ */
+class PageKey {
+  private final String url;
+  private final boolean secure;
+
+  PageKey(HttpServletRequest request) {
+    String query = request.getQueryString();
+
+    url = query != null ? request.getRequestURI() + '?' + query : request.getRequestURI();
+    secure = request.isSecure();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    PageKey pageKey = (PageKey) o;
+
+    return secure == pageKey.secure && url.equals(pageKey.url);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(url, secure);
+  }
+}
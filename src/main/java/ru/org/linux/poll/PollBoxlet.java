@@ -15,6 +15,7 @@
 
 package ru.org.linux.poll;
 
+import com.google.common.collect.ImmutableMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -24,9 +25,13 @@ import ru.org.linux.topic.Topic;
 import ru.org.linux.topic.TopicDao;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 @Controller
 public class PollBoxlet extends AbstractBoxlet {
+  private static final long TTL = 30 * 1000;
+
   private PollDao pollDao;
   private TopicDao messageDao;
 
@@ -43,6 +48,17 @@ public class PollBoxlet extends AbstractBoxlet {
   @Override
   @RequestMapping("/poll.boxlet")
   protected ModelAndView getData(HttpServletRequest request) throws Exception {
+    Map<String, Object> model = cached("", TTL, new Callable<Map<String, Object>>() {
+      @Override
+      public Map<String, Object> call() throws Exception {
+        return loadCurrentPoll();
+      }
+    });
+
+    return new ModelAndView("boxlets/poll", model);
+  }
+
+  private Map<String, Object> loadCurrentPoll() throws Exception {
     final Poll poll = pollDao.getCurrentPoll();
 
     Topic msg = messageDao.getById(poll.getTopicId());
@@ -51,11 +67,11 @@ public class PollBoxlet extends AbstractBoxlet {
 
     int countUsers = pollDao.getCountUsers(poll);
 
-    ModelAndView result = new ModelAndView("boxlets/poll");
-    result.addObject("poll", poll);
-    result.addObject("count", count);
-    result.addObject("message", msg);
-    result.addObject("countUsers", countUsers);
-    return result;
+    return ImmutableMap.<String, Object>of(
+            "poll", poll,
+            "count", count,
+            "message", msg,
+            "countUsers", countUsers
+    );
   }
 }
@@ -67,6 +67,12 @@ public class SearchController {
   @Autowired
   private SearchResultsService resultsService;
 
+  @Autowired
+  private SearchQueryValidator queryValidator;
+
+  @Autowired
+  private SearchResultCache resultCache;
+
   @ModelAttribute("sorts")
   public static Map<SearchOrder, String> getSorts() {
     Builder<SearchOrder, String> builder = ImmutableSortedMap.naturalOrder();
@@ -122,7 +128,7 @@ public class SearchController {
         return "redirect:/search.jsp";
       }
 
-      SearchViewer sv = new SearchViewer(query);
+      SearchViewer sv = new SearchViewer(query, queryValidator);
 
       if (Strings.isNullOrEmpty(query.getSection())) {
         query.setGroup(null);
@@ -138,7 +144,12 @@ public class SearchController {
         }
       }
 
-      SearchResponse response = sv.performSearch(client);
+      SearchResponse response = resultCache.get(query);
+
+      if (response == null) {
+        response = sv.performSearch(client);
+        resultCache.put(query, response);
+      }
 
       long current = System.currentTimeMillis();
 
@@ -0,0 +1,68 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import ru.org.linux.spring.dao.MessageText;
+import ru.org.linux.user.User;
+
+import java.util.Map;
+
+/**
+ * Данные, загруженные одним запросом для пачки индексируемых сообщений:
+ * авторы, теги топиков и тексты сообщений.
+ */
+final class SearchIndexBatch {
+  private final ImmutableMap<Integer, User> users;
+  private final ImmutableListMultimap<Integer, String> tags;
+  private final ImmutableMap<Integer, MessageText> texts;
+
+  SearchIndexBatch(
+          Map<Integer, User> users,
+          ImmutableListMultimap<Integer, String> tags,
+          Map<Integer, MessageText> texts
+  ) {
+    this.users = ImmutableMap.copyOf(users);
+    this.tags = tags;
+    this.texts = ImmutableMap.copyOf(texts);
+  }
+
+  User getUser(int id) {
+    User user = users.get(id);
+
+    if (user == null) {
+      throw new IllegalStateException("User " + id + " not loaded");
+    }
+
+    return user;
+  }
+
+  ImmutableList<String> getTags(int topicId) {
+    return tags.get(topicId);
+  }
+
+  MessageText getText(int msgid) {
+    MessageText text = texts.get(msgid);
+
+    if (text == null) {
+      throw new IllegalStateException("Text of message " + msgid + " not loaded");
+    }
+
+    return text;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanQuery;
+import org.elasticsearch.common.lucene.Lucene;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Проверка синтаксиса строки запроса без обращения к Elasticsearch.
+ *
+ * Строка разбирается тем же классическим парсером Lucene, на котором основан
+ * query_string; результат проверки недавних строк хранится в кеше, поэтому
+ * популярные запросы не разбираются повторно.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=SearchQueryValidator")
+public class SearchQueryValidator {
+  private final Cache<String, Boolean> cache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(10000)
+                  .recordStats()
+                  .build();
+
+  /**
+   * Проверить строку запроса
+   *
+   * @param queryText строка запроса (после экранирования)
+   * @return true, если строку можно использовать в query_string; иначе
+   * запрос нужно выполнять как поиск фразы
+   */
+  public boolean isValid(@Nonnull String queryText) {
+    Boolean valid = cache.getIfPresent(queryText);
+
+    if (valid == null) {
+      valid = parse(queryText);
+      cache.put(queryText, valid);
+    }
+
+    return valid;
+  }
+
+  /**
+   * Запомнить, что Elasticsearch не смог выполнить запрос
+   *
+   * @param queryText строка запроса (после экранирования)
+   */
+  public void markInvalid(@Nonnull String queryText) {
+    cache.put(queryText, false);
+  }
+
+  static boolean parse(String queryText) {
+    QueryParser parser = new QueryParser(Lucene.VERSION, "_all", new WhitespaceAnalyzer(Lucene.VERSION));
+    parser.setAllowLeadingWildcard(true);
+
+    try {
+      parser.parse(queryText);
+
+      return true;
+    } catch (ParseException | BooleanQuery.TooManyClauses ex) {
+      return false;
+    }
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return cache.size();
+  }
+
+  @ManagedAttribute
+  public double getHitRate() {
+    return cache.stats().hitRate();
+  }
+
+  @ManagedAttribute
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  @ManagedAttribute
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+}
@@ -16,21 +16,31 @@
 package ru.org.linux.search;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.client.Client;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 import ru.org.linux.comment.Comment;
+import ru.org.linux.comment.CommentDao;
 import ru.org.linux.comment.CommentList;
 import ru.org.linux.comment.CommentService;
 import ru.org.linux.group.Group;
 import ru.org.linux.group.GroupDao;
+import ru.org.linux.search.SearchQueueSender.UpdateBatch;
 import ru.org.linux.search.SearchQueueSender.UpdateComments;
 import ru.org.linux.search.SearchQueueSender.UpdateMessage;
 import ru.org.linux.search.SearchQueueSender.UpdateMonth;
@@ -45,21 +55,36 @@ import ru.org.linux.user.User;
 import ru.org.linux.user.UserDao;
 import ru.org.linux.util.bbcode.LorCodeService;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
+@ManagedResource(objectName = "lor:name=SearchQueueListener")
 public class SearchQueueListener {
   private static final Logger logger = LoggerFactory.getLogger(SearchQueueListener.class);
   public static final String MESSAGES_INDEX = "messages";
   public static final String MESSAGES_TYPE = "message";
 
+  /**
+   * Сколько топиков загружать одним запросом при переиндексации
+   */
+  private static final int TOPIC_BATCH_SIZE = 100;
+
+  /**
+   * Ограничения размера одного bulk запроса при переиндексации
+   */
+  private static final int MAX_BULK_ACTIONS = 1000;
+  private static final long MAX_BULK_BYTES = 5 * 1024 * 1024;
+
   @Autowired
   private CommentService commentService;
+
+  @Autowired
+  private CommentDao commentDao;
   
   @Autowired
   private MsgbaseDao msgbaseDao;
@@ -85,8 +110,37 @@ public class SearchQueueListener {
   @Autowired
   private TopicTagService topicTagService;
 
+  @Autowired
+  private SearchResultCache searchResultCache;
+
+  @Autowired
+  private MoreLikeThisService moreLikeThisService;
+
   private boolean mappingsSet = false;
 
+  /**
+   * Потоки для подготовки текста документов при переиндексации
+   */
+  private final ExecutorService renderPool = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactoryBuilder().setNameFormat("search-render-%d").setDaemon(true).build()
+  );
+
+  private volatile String reindexMonth = "";
+  private volatile int reindexTopicsTotal;
+  private volatile int reindexTopicsDone;
+  private volatile long reindexStarted;
+  private volatile long reindexFinished;
+  private final AtomicLong reindexDocuments = new AtomicLong();
+  private final AtomicLong bulkDocuments = new AtomicLong();
+  private final AtomicLong updateDocuments = new AtomicLong();
+  private final AtomicLong failedDocuments = new AtomicLong();
+
+  @PreDestroy
+  public void shutdown() {
+    renderPool.shutdownNow();
+  }
+
   public void handleMessage(UpdateMessage msgUpdate) throws MessageNotFoundException, IOException {
     if (!mappingsSet) {
       createIndex();
@@ -95,6 +149,8 @@ public class SearchQueueListener {
     logger.info("Indexing "+msgUpdate.getMsgid());
 
     reindexMessage(msgUpdate.getMsgid(), msgUpdate.isWithComments());
+
+    moreLikeThisService.schedule(msgUpdate.getMsgid());
   }
 
   private boolean isTopicVisible(Topic msg) {
@@ -124,6 +180,8 @@ public class SearchQueueListener {
               .execute()
               .actionGet();
 
+      searchResultCache.indexUpdated();
+
       if (withComments) {
         ImmutableList<Comment> comments = commentService.getCommentList(msg, true).getList();
 
@@ -148,6 +206,8 @@ public class SearchQueueListener {
         logger.warn("Bulk index failed: "+bulkResponse.buildFailureMessage());
         throw new RuntimeException("Bulk request failed");
       }
+
+      searchResultCache.indexUpdated();
     }
   }
 
@@ -158,31 +218,131 @@ public class SearchQueueListener {
 
     logger.info("Indexing comments "+msgUpdate.getMsgids());
 
-    BulkRequestBuilder bulkRequest = client.prepareBulk();
+    BulkBuffer bulk = new BulkBuffer(updateDocuments);
+
+    indexComments(msgUpdate.getMsgids(), ImmutableSet.<Integer>of(), bulk);
+
+    bulk.flush();
+  }
+
+  public void handleMessage(UpdateBatch update) throws IOException {
+    if (!mappingsSet) {
+      createIndex();
+    }
+
+    logger.info(
+            "Indexing topics " + update.getTopics() +
+            ", topics with comments " + update.getTopicsWithComments() +
+            ", comments " + update.getComments()
+    );
+
+    BulkBuffer bulk = new BulkBuffer(updateDocuments);
 
-    for (int msgid : msgUpdate.getMsgids()) {
+    for (List<Integer> batch : Lists.partition(update.getTopicsWithComments(), TOPIC_BATCH_SIZE)) {
+      reindexTopics(batch, true, bulk);
+    }
+
+    for (List<Integer> batch : Lists.partition(update.getTopics(), TOPIC_BATCH_SIZE)) {
+      reindexTopics(batch, false, bulk);
+    }
+
+    // комментарии топиков, переиндексируемых целиком, уже обработаны
+    indexComments(update.getComments(), ImmutableSet.copyOf(update.getTopicsWithComments()), bulk);
+
+    bulk.flush();
+
+    moreLikeThisService.schedule(update.getTopicsWithComments());
+    moreLikeThisService.schedule(update.getTopics());
+  }
+
+  /**
+   * Переиндексировать комментарии. Комментарии, их топики, теги топиков,
+   * авторы и тексты загружаются для всего списка сразу. Комментарии, которых
+   * нет в базе, или комментарии несуществующих топиков пропускаются.
+   *
+   * @param msgids id комментариев
+   * @param skipTopics топики, комментарии которых нужно пропустить
+   * @param bulk буфер bulk запросов
+   */
+  private void indexComments(List<Integer> msgids, Set<Integer> skipTopics, BulkBuffer bulk) {
+    Set<Integer> ids = new LinkedHashSet<>(msgids.size());
+
+    for (int msgid : msgids) {
       if (msgid==0) {
         logger.warn("Skipping MSGID=0!!!");
+      } else {
+        ids.add(msgid);
+      }
+    }
+
+    Map<Integer, Comment> loaded = commentDao.getByIds(ids);
+
+    List<Comment> found = new ArrayList<>(ids.size());
+    Set<Integer> topicIds = new HashSet<>();
+
+    for (int msgid : ids) {
+      Comment comment = loaded.get(msgid);
+
+      if (comment == null) {
+        logger.warn("Comment " + msgid + " not found, skipping");
         continue;
       }
 
-      Comment comment = commentService.getById(msgid);
+      if (!skipTopics.contains(comment.getTopicId())) {
+        found.add(comment);
+        topicIds.add(comment.getTopicId());
+      }
+    }
 
-      // комментарии могут быть из разного топика в функция массового удаления
-      // возможно для скорости нужен какой-то кеш топиков, т.к. чаще бывает что все
-      // комментарии из одного топика
-      Topic topic = topicDao.getById(comment.getTopicId());
+    // комментарии могут быть из разных топиков в функции массового удаления,
+    // но обычно все они из одного топика
+    Map<Integer, Topic> topics = new HashMap<>();
+
+    for (Topic topic : topicDao.getByIds(topicIds)) {
+      topics.put(topic.getId(), topic);
+    }
+
+    List<Comment> comments = new ArrayList<>(found.size());
+    Set<Integer> userIds = new HashSet<>();
+    List<Integer> textIds = new ArrayList<>();
+
+    for (Comment comment : found) {
+      Topic topic = topics.get(comment.getTopicId());
+
+      if (topic == null) {
+        logger.warn("Topic " + comment.getTopicId() + " of comment " + comment.getId() + " not found, skipping");
+        continue;
+      }
+
+      comments.add(comment);
+
+      if (isTopicVisible(topic) && !comment.isDeleted()) {
+        userIds.add(topic.getUid());
+        userIds.add(comment.getUserid());
+        textIds.add(comment.getId());
+      }
+    }
+
+    SearchIndexBatch batch = new SearchIndexBatch(
+            userDao.getUsersCachedMap(userIds),
+            topicTagService.getTags(topicIds),
+            msgbaseDao.getMessageText(textIds)
+    );
+
+    List<Future<IndexRequestBuilder>> rendered = new ArrayList<>(textIds.size());
+
+    for (Comment comment : comments) {
+      Topic topic = topics.get(comment.getTopicId());
 
       if (!isTopicVisible(topic) || comment.isDeleted()) {
         logger.info("Deleting comment " + comment.getId());
-        bulkRequest.add(client.prepareDelete(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(comment.getId())));
+        bulk.add(prepareDelete(comment.getId()));
       } else {
-        String message = lorCodeService.extractPlainText(msgbaseDao.getMessageText(comment.getId()));
-        bulkRequest.add(processComment(topic, comment, message));
+        rendered.add(renderComment(topic, comment, batch));
       }
     }
 
-    executeBulk(bulkRequest);
+    addRendered(rendered, bulk);
   }
 
   public void handleMessage(UpdateMonth msgUpdate) throws MessageNotFoundException, IOException {
@@ -197,20 +357,198 @@ public class SearchQueueListener {
     long startTime = System.nanoTime();
 
     List<Integer> topicIds = topicDao.getMessageForMonth(year, month);
-    for (int topicId : topicIds) {
-      reindexMessage(topicId, true);
+
+    reindexMonth = Integer.toString(year) + '/' + month;
+    reindexTopicsTotal = topicIds.size();
+    reindexTopicsDone = 0;
+    reindexDocuments.set(0);
+    reindexStarted = startTime;
+    reindexFinished = 0;
+
+    BulkBuffer bulk = new BulkBuffer(reindexDocuments);
+
+    for (List<Integer> batch : Lists.partition(topicIds, TOPIC_BATCH_SIZE)) {
+      reindexTopics(batch, true, bulk);
+
+      reindexTopicsDone += batch.size();
+
+      logger.debug(
+              "Reindex month " + reindexMonth + ": " + reindexTopicsDone + '/' + reindexTopicsTotal + " topics, " +
+              reindexDocuments.get() + " documents, " + String.format("%.1f", getReindexRate()) + " documents/s"
+      );
     }
 
+    bulk.flush();
+
     long endTime = System.nanoTime();
-    logger.info("Reindex month "+year+'/'+month+" done, "+(endTime-startTime)/1000000+" millis");
+    reindexFinished = endTime;
+
+    logger.info(
+            "Reindex month "+year+'/'+month+" done, "+(endTime-startTime)/1000000+" millis, " +
+            topicIds.size() + " topics, " + reindexDocuments.get() + " documents"
+    );
+  }
+
+  /**
+   * Переиндексировать пачку топиков, возможно вместе с комментариями. Авторы, теги и
+   * тексты загружаются для всей пачки сразу, текст для индекса готовится
+   * в renderPool, документы топиков и комментариев отправляются общими bulk запросами.
+   *
+   * @param topicIds id топиков
+   * @param withComments переиндексировать и комментарии топиков
+   * @param bulk буфер bulk запросов
+   */
+  private void reindexTopics(List<Integer> topicIds, boolean withComments, BulkBuffer bulk) {
+    List<Topic> topics = topicDao.getByIds(topicIds);
+
+    if (topics.size() < topicIds.size()) {
+      Set<Integer> missing = new HashSet<>(topicIds);
+
+      for (Topic topic : topics) {
+        missing.remove(topic.getId());
+      }
+
+      logger.warn("Topics " + missing + " not found, skipping");
+    }
+    ImmutableListMultimap<Integer, Comment> comments =
+            withComments ? commentDao.getCommentsByTopicIds(topicIds) : ImmutableListMultimap.<Integer, Comment>of();
+
+    Set<Integer> userIds = new HashSet<>();
+    List<Integer> textIds = new ArrayList<>();
+
+    for (Topic topic : topics) {
+      if (isTopicVisible(topic)) {
+        userIds.add(topic.getUid());
+        textIds.add(topic.getId());
+
+        for (Comment comment : comments.get(topic.getId())) {
+          if (!comment.isDeleted()) {
+            userIds.add(comment.getUserid());
+            textIds.add(comment.getId());
+          }
+        }
+      }
+    }
+
+    SearchIndexBatch batch = new SearchIndexBatch(
+            userDao.getUsersCachedMap(userIds),
+            topicTagService.getTags(topicIds),
+            msgbaseDao.getMessageText(textIds)
+    );
+
+    List<Future<IndexRequestBuilder>> rendered = new ArrayList<>(textIds.size());
+
+    for (Topic topic : topics) {
+      if (isTopicVisible(topic)) {
+        rendered.add(renderTopic(topic, batch));
+
+        for (Comment comment : comments.get(topic.getId())) {
+          if (comment.isDeleted()) {
+            bulk.add(prepareDelete(comment.getId()));
+          } else {
+            rendered.add(renderComment(topic, comment, batch));
+          }
+        }
+      } else {
+        bulk.add(prepareDelete(topic.getId()));
+
+        for (Comment comment : comments.get(topic.getId())) {
+          bulk.add(prepareDelete(comment.getId()));
+        }
+      }
+    }
+
+    addRendered(rendered, bulk);
+  }
+
+  private Future<IndexRequestBuilder> renderTopic(final Topic topic, final SearchIndexBatch batch) {
+    return renderPool.submit(new Callable<IndexRequestBuilder>() {
+      @Override
+      public IndexRequestBuilder call() {
+        return prepareTopic(topic, batch);
+      }
+    });
+  }
+
+  private Future<IndexRequestBuilder> renderComment(final Topic topic, final Comment comment, final SearchIndexBatch batch) {
+    return renderPool.submit(new Callable<IndexRequestBuilder>() {
+      @Override
+      public IndexRequestBuilder call() {
+        return prepareComment(topic, comment, batch);
+      }
+    });
+  }
+
+  /**
+   * Дождаться подготовки документов и добавить их в bulk запрос в исходном порядке.
+   * Документы, которые не удалось подготовить, пропускаются.
+   */
+  private void addRendered(List<Future<IndexRequestBuilder>> rendered, BulkBuffer bulk) {
+    try {
+      for (Future<IndexRequestBuilder> request : rendered) {
+        try {
+          bulk.add(request.get());
+        } catch (ExecutionException e) {
+          failedDocuments.incrementAndGet();
+          logger.warn("Can't prepare document for index, skipping", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      for (Future<IndexRequestBuilder> request : rendered) {
+        request.cancel(true);
+      }
+
+      throw new RuntimeException("Reindex interrupted", e);
+    }
+  }
+
+  private DeleteRequestBuilder prepareDelete(int msgid) {
+    return client.prepareDelete(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(msgid));
+  }
+
+  private IndexRequestBuilder prepareTopic(Topic topic, SearchIndexBatch batch) {
+    String message = lorCodeService.extractPlainText(topic.getId(), batch.getText(topic.getId()));
+
+    return client
+            .prepareIndex(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(topic.getId()))
+            .setSource(topicDocument(topic, batch.getUser(topic.getUid()), batch.getTags(topic.getId()), message));
+  }
+
+  private IndexRequestBuilder prepareComment(Topic topic, Comment comment, SearchIndexBatch batch) {
+    String message = lorCodeService.extractPlainText(comment.getId(), batch.getText(comment.getId()));
+
+    return client
+            .prepareIndex(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(comment.getId()))
+            .setSource(commentDocument(
+                    topic,
+                    batch.getUser(topic.getUid()),
+                    comment,
+                    batch.getUser(comment.getUserid()),
+                    batch.getTags(topic.getId()),
+                    message
+            ));
   }
 
   private void updateMessage(Topic topic) {
+    User author = userDao.getUserCached(topic.getUid());
+    String message = lorCodeService.extractPlainText(topic.getId(), msgbaseDao.getMessageText(topic.getId()));
+
+    client
+            .prepareIndex(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(topic.getId()))
+            .setSource(topicDocument(topic, author, topicTagService.getTags(topic), message))
+            .execute()
+            .actionGet();
+
+    searchResultCache.indexUpdated();
+  }
+
+  private Map<String, Object> topicDocument(Topic topic, User author, List<String> tags, String message) {
     Map<String, Object> doc = new HashMap<>();
 
     Section section = sectionService.getSection(topic.getSectionId());
     Group group = groupDao.getGroup(topic.getGroupId());
-    User author = userDao.getUserCached(topic.getUid());
 
     doc.put("section", section.getUrlName());
     doc.put("topic_author", author.getNick());
@@ -220,18 +558,14 @@ public class SearchQueueListener {
 
     doc.put("title", topic.getTitleUnescaped());
     doc.put("topic_title", topic.getTitleUnescaped());
-    doc.put("message", lorCodeService.extractPlainText(msgbaseDao.getMessageText(topic.getId())));
+    doc.put("message", message);
     Date postdate = topic.getPostdate();
     doc.put("postdate", new Timestamp(postdate.getTime()));
-    doc.put("tag", topicTagService.getTags(topic));
+    doc.put("tag", tags);
 
     doc.put("is_comment", false);
 
-    client
-            .prepareIndex(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(topic.getId()))
-            .setSource(doc)
-            .execute()
-            .actionGet();
+    return doc;
   }
 
   private void reindexComments(Topic topic, CommentList comments) {
@@ -241,7 +575,7 @@ public class SearchQueueListener {
       if (comment.isDeleted()) {
         bulkRequest.add(client.prepareDelete(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(comment.getId())));
       } else {
-        String message = lorCodeService.extractPlainText(msgbaseDao.getMessageText(comment.getId()));
+        String message = lorCodeService.extractPlainText(comment.getId(), msgbaseDao.getMessageText(comment.getId()));
         bulkRequest.add(processComment(topic, comment, message));
       }
     }
@@ -250,12 +584,26 @@ public class SearchQueueListener {
   }
 
   private IndexRequestBuilder processComment(Topic topic, Comment comment, String message) {
+    User author = userDao.getUserCached(comment.getUserid());
+    User topicAuthor = userDao.getUserCached(topic.getUid());
+
+    return client
+            .prepareIndex(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(comment.getId()))
+            .setSource(commentDocument(topic, topicAuthor, comment, author, topicTagService.getTags(topic), message));
+  }
+
+  private Map<String, Object> commentDocument(
+          Topic topic,
+          User topicAuthor,
+          Comment comment,
+          User author,
+          List<String> tags,
+          String message
+  ) {
     Map<String, Object> doc = new HashMap<>();
 
     Section section = sectionService.getSection(topic.getSectionId());
     Group group = groupDao.getGroup(topic.getGroupId());
-    User author = userDao.getUserCached(comment.getUserid());
-    User topicAuthor = userDao.getUserCached(topic.getUid());
 
     doc.put("section", section.getUrlName());
     doc.put("topic_author", topicAuthor.getNick());
@@ -279,13 +627,11 @@ public class SearchQueueListener {
     Date postdate = comment.getPostdate();
     doc.put("postdate", new Timestamp(postdate.getTime()));
 
-    doc.put("tag", topicTagService.getTags(topic));
+    doc.put("tag", tags);
 
     doc.put("is_comment", true);
 
-    return client
-            .prepareIndex(MESSAGES_INDEX, MESSAGES_TYPE, Integer.toString(comment.getId()))
-            .setSource(doc);
+    return doc;
   }
 
   private void createIndex() throws IOException {
@@ -305,4 +651,113 @@ public class SearchQueueListener {
 
     mappingsSet = true;
   }
+
+  @ManagedAttribute
+  public String getReindexMonth() {
+    return reindexMonth;
+  }
+
+  @ManagedAttribute
+  public int getReindexTopicsTotal() {
+    return reindexTopicsTotal;
+  }
+
+  @ManagedAttribute
+  public int getReindexTopicsDone() {
+    return reindexTopicsDone;
+  }
+
+  @ManagedAttribute
+  public long getReindexDocuments() {
+    return reindexDocuments.get();
+  }
+
+  @ManagedAttribute
+  public double getReindexRate() {
+    long finished = reindexFinished;
+    long elapsed = (finished != 0 ? finished : System.nanoTime()) - reindexStarted;
+
+    return reindexStarted == 0 || elapsed <= 0 ? 0 : reindexDocuments.get() * 1e9 / elapsed;
+  }
+
+  @ManagedAttribute
+  public long getBulkDocuments() {
+    return bulkDocuments.get();
+  }
+
+  /**
+   * Число документов, проиндексированных по обновлениям (без переиндексации месяцев);
+   * сравнивается с числом запрошенных обновлений в SearchQueueSender
+   */
+  @ManagedAttribute
+  public long getUpdateDocuments() {
+    return updateDocuments.get();
+  }
+
+  /**
+   * Число документов, которые не удалось подготовить или проиндексировать
+   */
+  @ManagedAttribute
+  public long getFailedDocuments() {
+    return failedDocuments.get();
+  }
+
+  /**
+   * Накопление документов для bulk запроса; запрос отправляется,
+   * когда число документов или размер превышает ограничение.
+   * Ошибки отдельных документов записываются в лог и не прерывают
+   * обработку остальных.
+   */
+  private class BulkBuffer {
+    private final AtomicLong documents;
+    private BulkRequestBuilder request = client.prepareBulk();
+
+    BulkBuffer(AtomicLong documents) {
+      this.documents = documents;
+    }
+
+    void add(IndexRequestBuilder index) {
+      request.add(index);
+      flushIfFull();
+    }
+
+    void add(DeleteRequestBuilder delete) {
+      request.add(delete);
+      flushIfFull();
+    }
+
+    private void flushIfFull() {
+      if (request.numberOfActions() >= MAX_BULK_ACTIONS ||
+              request.request().estimatedSizeInBytes() >= MAX_BULK_BYTES) {
+        flush();
+      }
+    }
+
+    void flush() {
+      int count = request.numberOfActions();
+
+      if (count > 0) {
+        BulkResponse response = request.execute().actionGet();
+
+        int failed = 0;
+
+        if (response.hasFailures()) {
+          for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+              failed++;
+              logger.warn("Can't index " + item.getId() + ": " + item.getFailureMessage());
+            }
+          }
+        }
+
+        searchResultCache.indexUpdated();
+
+        documents.addAndGet(count - failed);
+        bulkDocuments.addAndGet(count - failed);
+        failedDocuments.addAndGet(failed);
+      }
+
+      request = client.prepareBulk();
+    }
+  }
 }
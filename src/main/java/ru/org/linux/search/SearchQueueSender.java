@@ -16,27 +16,57 @@
 package ru.org.linux.search;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.JmsException;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PreDestroy;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Queue;
 import javax.jms.Session;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Постановка сообщений в очередь индексации.
+ *
+ * Обновления отдельных топиков и комментариев не отправляются сразу, а
+ * накапливаются в течение WINDOW миллисекунд и отправляются одним сообщением
+ * UpdateBatch: повторные обновления одного и того же сообщения за это время
+ * индексируются один раз. Обновления, запрошенные внутри транзакции,
+ * добавляются в очередь только после ее завершения: иначе индексатор может
+ * не увидеть незавершенные изменения или проиндексировать отмененные.
+ */
 @Component
+@ManagedResource(objectName = "lor:name=SearchQueueSender")
 public class SearchQueueSender {
+  private static final int WINDOW = 2000;
+
   private JmsTemplate jmsTemplate;
   private Queue queue;
   private static final Logger logger = LoggerFactory.getLogger(SearchQueueSender.class);
 
+  private Set<Integer> pendingTopics = new HashSet<>();
+  private Set<Integer> pendingTopicsWithComments = new HashSet<>();
+  private Set<Integer> pendingComments = new HashSet<>();
+
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
   @Autowired
   public void setJmsTemplate(JmsTemplate jmsTemplate) {
     this.jmsTemplate = jmsTemplate;
@@ -54,10 +84,18 @@ public class SearchQueueSender {
   public void updateMessage(final int msgid, final boolean withComments) {
     logger.info("Scheduling reindex #"+msgid+" withComments="+withComments);
 
-    jmsTemplate.send(queue, new MessageCreator() {
+    received.incrementAndGet();
+
+    afterCommit(new Runnable() {
       @Override
-      public Message createMessage(Session session) throws JMSException {
-        return session.createObjectMessage(new UpdateMessage(msgid, withComments));
+      public void run() {
+        synchronized (SearchQueueSender.this) {
+          if (withComments) {
+            pendingTopicsWithComments.add(msgid);
+          } else {
+            pendingTopics.add(msgid);
+          }
+        }
       }
     });
   }
@@ -73,24 +111,117 @@ public class SearchQueueSender {
     });
   }
 
-  public void updateComment(final int msgid) {
+  public void updateComment(int msgid) {
     Preconditions.checkArgument(msgid!=0, "msgid==0!?");
 
-    jmsTemplate.send(queue, new MessageCreator() {
+    updateComment(Collections.singletonList(msgid));
+  }
+
+  public void updateComment(List<Integer> msgids) {
+    received.addAndGet(msgids.size());
+
+    final List<Integer> ids = ImmutableList.copyOf(msgids);
+
+    afterCommit(new Runnable() {
       @Override
-      public Message createMessage(Session session) throws JMSException {
-        return session.createObjectMessage(new UpdateComments(Collections.singletonList(msgid)));
+      public void run() {
+        synchronized (SearchQueueSender.this) {
+          pendingComments.addAll(ids);
+        }
       }
     });
   }
 
-  public void updateComment(final List<Integer> msgids) {
-    jmsTemplate.send(queue, new MessageCreator() {
-      @Override
-      public Message createMessage(Session session) throws JMSException {
-        return session.createObjectMessage(new UpdateComments(msgids));
+  /**
+   * Выполнить после успешного завершения текущей транзакции или сразу,
+   * если транзакции нет
+   */
+  private static void afterCommit(final Runnable action) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          action.run();
+        }
+      });
+    } else {
+      action.run();
+    }
+  }
+
+  /**
+   * Отправить накопленные обновления одним сообщением. Если отправить не
+   * удалось, обновления возвращаются в очередь и уйдут со следующим пакетом
+   */
+  @Scheduled(fixedDelay = WINDOW)
+  @PreDestroy
+  public void flush() {
+    final UpdateBatch batch;
+
+    synchronized (this) {
+      if (pendingTopics.isEmpty() && pendingTopicsWithComments.isEmpty() && pendingComments.isEmpty()) {
+        return;
       }
-    });
+
+      batch = new UpdateBatch(pendingTopics, pendingTopicsWithComments, pendingComments);
+
+      pendingTopics = new HashSet<>();
+      pendingTopicsWithComments = new HashSet<>();
+      pendingComments = new HashSet<>();
+    }
+
+    try {
+      jmsTemplate.send(queue, new MessageCreator() {
+        @Override
+        public Message createMessage(Session session) throws JMSException {
+          return session.createObjectMessage(batch);
+        }
+      });
+    } catch (JmsException ex) {
+      failures.incrementAndGet();
+
+      logger.warn("Can't send " + batch.size() + " updates to search queue, will retry", ex);
+
+      synchronized (this) {
+        pendingTopics.addAll(batch.getTopics());
+        pendingTopicsWithComments.addAll(batch.getTopicsWithComments());
+        pendingComments.addAll(batch.getComments());
+      }
+
+      return;
+    }
+
+    sent.addAndGet(batch.size());
+    batches.incrementAndGet();
+  }
+
+  /**
+   * Число запрошенных обновлений топиков и комментариев
+   */
+  @ManagedAttribute
+  public long getReceivedCount() {
+    return received.get();
+  }
+
+  /**
+   * Число обновлений, отправленных на индексацию после объединения
+   */
+  @ManagedAttribute
+  public long getSentCount() {
+    return sent.get();
+  }
+
+  @ManagedAttribute
+  public long getBatchCount() {
+    return batches.get();
+  }
+
+  /**
+   * Число пакетов, которые не удалось отправить и которые вернулись в очередь
+   */
+  @ManagedAttribute
+  public long getFailedCount() {
+    return failures.get();
   }
 
   public static class UpdateMessage implements Serializable {
@@ -144,4 +275,42 @@ public class SearchQueueSender {
       return month;
     }
   }
+
+  /**
+   * Объединенные обновления. Топик с комментариями поглощает обновление
+   * самого топика; обновления комментариев этого топика пропускаются
+   * при индексации (id топика комментария здесь неизвестен).
+   */
+  public static class UpdateBatch implements Serializable {
+    private final ArrayList<Integer> topics;
+    private final ArrayList<Integer> topicsWithComments;
+    private final ArrayList<Integer> comments;
+    private static final long serialVersionUID = -3305410749521830466L;
+
+    public UpdateBatch(Set<Integer> topics, Set<Integer> topicsWithComments, Set<Integer> comments) {
+      this.topicsWithComments = new ArrayList<>(topicsWithComments);
+
+      Set<Integer> topicsOnly = new HashSet<>(topics);
+      topicsOnly.removeAll(topicsWithComments);
+      this.topics = new ArrayList<>(topicsOnly);
+
+      this.comments = new ArrayList<>(comments);
+    }
+
+    public List<Integer> getTopics() {
+      return Collections.unmodifiableList(topics);
+    }
+
+    public List<Integer> getTopicsWithComments() {
+      return Collections.unmodifiableList(topicsWithComments);
+    }
+
+    public List<Integer> getComments() {
+      return Collections.unmodifiableList(comments);
+    }
+
+    public int size() {
+      return topics.size() + topicsWithComments.size() + comments.size();
+    }
+  }
 }
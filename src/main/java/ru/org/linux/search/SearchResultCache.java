@@ -0,0 +1,192 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import ru.org.linux.search.SearchViewer.SearchInterval;
+import ru.org.linux.search.SearchViewer.SearchOrder;
+import ru.org.linux.search.SearchViewer.SearchRange;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш результатов поиска.
+ *
+ * SearchQueueListener увеличивает поколение индекса после каждого изменения
+ * индекса. Результат, полученный в предыдущем поколении, еще отдается
+ * в течение MAX_STALE_MILLIS с момента поиска: при частых изменениях индекса
+ * популярные запросы продолжают попадать в кеш, а отставание результатов
+ * от индекса остается ограниченным.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=SearchResultCache")
+public class SearchResultCache {
+  private static final long MAX_STALE_MILLIS = 30 * 1000;
+
+  private final Cache<Key, Entry> cache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(2000)
+                  .expireAfterWrite(5, TimeUnit.MINUTES)
+                  .recordStats()
+                  .build();
+
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong stale = new AtomicLong();
+
+  /**
+   * Индекс изменился
+   */
+  public void indexUpdated() {
+    generation.incrementAndGet();
+  }
+
+  @Nullable
+  public SearchResponse get(@Nonnull SearchRequest query) {
+    Key key = new Key(query);
+    Entry entry = cache.getIfPresent(key);
+
+    if (entry == null) {
+      return null;
+    }
+
+    if (entry.generation != generation.get() &&
+            System.currentTimeMillis() - entry.created > MAX_STALE_MILLIS) {
+      stale.incrementAndGet();
+      cache.invalidate(key);
+      return null;
+    }
+
+    return entry.response;
+  }
+
+  public void put(@Nonnull SearchRequest query, @Nonnull SearchResponse response) {
+    cache.put(new Key(query), new Entry(response, generation.get()));
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @ManagedAttribute
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return cache.size();
+  }
+
+  @ManagedAttribute
+  public double getHitRate() {
+    long requests = cache.stats().requestCount();
+
+    return requests == 0 ? 0 : (double) getHitCount() / requests;
+  }
+
+  @ManagedAttribute
+  public long getHitCount() {
+    return cache.stats().hitCount() - stale.get();
+  }
+
+  @ManagedAttribute
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  @ManagedAttribute
+  public long getStaleCount() {
+    return stale.get();
+  }
+
+  private static class Entry {
+    private final SearchResponse response;
+    private final long generation;
+    private final long created = System.currentTimeMillis();
+
+    private Entry(SearchResponse response, long generation) {
+      this.response = response;
+      this.generation = generation;
+    }
+  }
+
+  /**
+   * Нормализованные параметры поиска
+   */
+  private static class Key {
+    private final String q;
+    private final SearchRange range;
+    private final SearchInterval interval;
+    private final String section;
+    private final String group;
+    private final int user;
+    private final boolean usertopic;
+    private final SearchOrder sort;
+    private final int offset;
+
+    private Key(SearchRequest query) {
+      q = query.getQ().trim();
+      range = query.getRange();
+      interval = query.getInterval();
+      section = Strings.emptyToNull(query.getSection());
+      group = Strings.emptyToNull(query.getGroup());
+      user = query.getUser() != null ? query.getUser().getId() : 0;
+      usertopic = user != 0 && query.isUsertopic();
+      sort = query.getSort();
+      offset = query.getOffset();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      Key key = (Key) o;
+
+      return user == key.user &&
+              usertopic == key.usertopic &&
+              offset == key.offset &&
+              q.equals(key.q) &&
+              range == key.range &&
+              interval == key.interval &&
+              sort == key.sort &&
+              Objects.equal(section, key.section) &&
+              Objects.equal(group, key.group);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(q, range, interval, section, group, user, usertopic, sort, offset);
+    }
+  }
+}
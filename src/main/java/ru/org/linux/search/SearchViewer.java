@@ -16,7 +16,7 @@
 package ru.org.linux.search;
 
 import com.google.common.base.Strings;
-import org.elasticsearch.action.admin.indices.validate.query.ValidateQueryResponse;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
@@ -126,35 +126,29 @@ public class SearchViewer {
   public static final int SEARCH_ROWS = 50;
 
   private final SearchRequest query;
+  private final SearchQueryValidator validator;
 
-  public SearchViewer(SearchRequest query) {
+  public SearchViewer(SearchRequest query, SearchQueryValidator validator) {
     this.query = query;
+    this.validator = validator;
   }
 
-  private QueryBuilder processQueryString(Client client, String queryText) {
-    String fixedText = queryText.replaceAll("((?:\\[)|(?:])|(?:[\\\\/]))", "\\\\$1");
+  private static String escapeQueryString(String queryText) {
+    return queryText.replaceAll("((?:\\[)|(?:])|(?:[\\\\/]))", "\\\\$1");
+  }
 
+  private static QueryBuilder stringQuery(String fixedText) {
     QueryStringQueryBuilder esQuery = queryString(fixedText);
     esQuery.lenient(true);
     esQuery.minimumShouldMatch("50%");
 
-    ValidateQueryResponse response = client
-            .admin()
-            .indices()
-            .prepareValidateQuery(SearchQueueListener.MESSAGES_INDEX)
-            .setTypes(SearchQueueListener.MESSAGES_TYPE)
-            .setQuery(esQuery)
-            .execute()
-            .actionGet();
-
-    if (response.isValid()) {
-      return esQuery;
-    } else {
-      logger.info("Invalid query '{}', using converting to phrase", queryText);
-      MatchQueryBuilder fixedQuery = matchPhraseQuery("_all", queryText);
-      fixedQuery.setLenient(true);
-      return fixedQuery;
-    }
+    return esQuery;
+  }
+
+  private static QueryBuilder phraseQuery(String queryText) {
+    MatchQueryBuilder fixedQuery = matchPhraseQuery("_all", queryText);
+    fixedQuery.setLenient(true);
+    return fixedQuery;
   }
 
   private QueryBuilder boost(QueryBuilder query) {
@@ -166,7 +160,30 @@ public class SearchViewer {
     return booster;
   }
 
+  /**
+   * Выполнить поиск. Синтаксис строки запроса проверяется локально;
+   * некорректная строка, как и строка, на которой Elasticsearch выдал ошибку,
+   * ищется как фраза.
+   */
   public SearchResponse performSearch(Client client) {
+    String queryText = this.query.getQ();
+    String fixedText = escapeQueryString(queryText);
+
+    if (validator.isValid(fixedText)) {
+      try {
+        return performSearch(client, stringQuery(fixedText));
+      } catch (SearchPhaseExecutionException ex) {
+        logger.info("Query '{}' failed, using converting to phrase", queryText);
+        validator.markInvalid(fixedText);
+      }
+    } else {
+      logger.info("Invalid query '{}', using converting to phrase", queryText);
+    }
+
+    return performSearch(client, phraseQuery(queryText));
+  }
+
+  private SearchResponse performSearch(Client client, QueryBuilder esQuery) {
     SearchRequestBuilder request = client.prepareSearch(SearchQueueListener.MESSAGES_INDEX);
 
     request.setTypes(SearchQueueListener.MESSAGES_TYPE);
@@ -184,8 +201,6 @@ public class SearchViewer {
             "tag"
     );
 
-    QueryBuilder esQuery = processQueryString(client, this.query.getQ());
-
     request.setSize(SEARCH_ROWS);
     request.setFrom(this.query.getOffset());
 
@@ -15,31 +15,25 @@
 
 package ru.org.linux.spring;
 
-import com.google.common.collect.ImmutableList;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.servlet.ModelAndView;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.section.Section;
 import ru.org.linux.site.Template;
-import ru.org.linux.topic.Topic;
+import ru.org.linux.topic.MainPageFeed;
 import ru.org.linux.topic.TopicDao;
-import ru.org.linux.topic.TopicListService;
-import ru.org.linux.topic.TopicPrepareService;
 import ru.org.linux.user.Profile;
 import ru.org.linux.user.MemoriesDao;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.List;
 
 @Controller
 public class MainPageController {
   @Autowired
-  private TopicPrepareService prepareService;
-
-  @Autowired
-  private TopicListService topicListService;
+  private MainPageFeed mainPageFeed;
 
   @Autowired
   private TopicDao topicDao;
@@ -47,17 +41,8 @@ public class MainPageController {
   @Autowired
   private MemoriesDao memoriesDao;
 
-  private List<Topic> filterMiniNews(List<Topic> messages) {
-    ImmutableList.Builder<Topic> filtred = new ImmutableList.Builder<Topic>();
-
-    for (Topic message : messages) {
-      if(message.isMinor()) {
-        continue;
-      }
-      filtred.add(message);
-    }
-    return filtred.build();
-  }
+  @Autowired
+  private PageCache pageCache;
 
   @RequestMapping({"/", "/index.jsp"})
   public ModelAndView mainPage(HttpServletRequest request, HttpServletResponse response) {
@@ -66,18 +51,20 @@ public class MainPageController {
     response.setDateHeader("Expires", System.currentTimeMillis() - 20 * 3600 * 1000);
     response.setDateHeader("Last-Modified", System.currentTimeMillis() - 2 * 1000);
 
-    List<Topic> messages = topicListService.getMainPageFeed(tmpl.getProf().isShowGalleryOnMain());
+    if (!tmpl.isSessionAuthorized()) {
+      pageCache.cacheSectionPage(request, Section.SECTION_NEWS, Section.SECTION_GALLERY);
+    }
 
     ModelAndView mv = new ModelAndView("index");
 
     Profile profile = tmpl.getProf();
 
-    mv.getModel().put("news", prepareService.prepareMessagesForUser(
-            profile.isMiniNewsBoxletOnMainPage() ? filterMiniNews(messages) : messages,
+    mv.getModel().put("news", mainPageFeed.getFeed(
+            profile.isShowGalleryOnMain(),
+            profile.isMiniNewsBoxletOnMainPage(),
             request.isSecure(),
             tmpl.getCurrentUser(),
-            profile,
-            false
+            profile
     ));
   
     if (tmpl.isSessionAuthorized()) {
@@ -129,6 +129,35 @@ public class SiteConfig {
     return Boolean.valueOf(property);
   }
 
+  /**
+   * Добавление заголовка X-SQL-Queries с числом SQL запросов.
+   * Системное свойство SqlQueryHeader имеет приоритет над настройкой,
+   * им заголовок включается в тестовом окружении.
+   *
+   * @return true если разрешено, иначе false
+   */
+  public Boolean enableSqlQueryHeader() {
+    String property = System.getProperty("SqlQueryHeader", properties.getProperty("SqlQueryHeader"));
+    if (property == null) {
+      return false;
+    }
+    return Boolean.valueOf(property);
+  }
+
+  /**
+   * Сколько раз за HTTP запрос можно выполнить одну форму SQL запроса,
+   * прежде чем в лог попадет предупреждение о N+1.
+   *
+   * @return число запросов
+   */
+  public int getSqlRepeatThreshold() {
+    String property = properties.getProperty("SqlRepeatThreshold");
+    if (property == null) {
+      return 10;
+    }
+    return Integer.parseInt(property);
+  }
+
   /**
    * По истечении какого времени с момента добавления комментарий нельзя будет изменять.
    *
@@ -15,16 +15,31 @@
 
 package ru.org.linux.spring.boxlets;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.Callable;
 
 public abstract class AbstractBoxlet extends AbstractController {
+  @Autowired
+  private BoxletCache boxletCache;
+
   protected abstract ModelAndView getData(HttpServletRequest request
   ) throws Exception;
 
+  /**
+   * Данные бокслета из кеша, обновляемые в фоне после ttlMillis
+   *
+   * @param key параметры данных; для данных без параметров - пустая строка
+   * @param loader запрос данных, не использующий HTTP запрос
+   */
+  protected <T> T cached(Object key, long ttlMillis, Callable<T> loader) throws Exception {
+    return boxletCache.get(getClass().getSimpleName(), key, ttlMillis, loader);
+  }
+
   @Override
   protected ModelAndView handleRequestInternal(HttpServletRequest request,
                                                HttpServletResponse response) throws Exception {
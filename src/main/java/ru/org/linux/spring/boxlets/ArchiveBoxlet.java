@@ -27,9 +27,12 @@ import ru.org.linux.topic.ArchiveDao;
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @Controller
 public class ArchiveBoxlet extends AbstractBoxlet {
+  private static final long TTL = 30 * 60 * 1000;
+
   @Autowired
   private ArchiveDao archiveDao;
 
@@ -52,7 +55,12 @@ public class ArchiveBoxlet extends AbstractBoxlet {
   @Override
   @RequestMapping("/archive.boxlet")
   protected ModelAndView getData(HttpServletRequest request) throws Exception {
-    List<ArchiveDao.ArchiveStats> list = archiveDao.getLatestArchiveStats(sectionNews, 13);
+    List<ArchiveDao.ArchiveStats> list = cached("", TTL, new Callable<List<ArchiveDao.ArchiveStats>>() {
+      @Override
+      public List<ArchiveDao.ArchiveStats> call() {
+        return archiveDao.getLatestArchiveStats(sectionNews, 13);
+      }
+    });
 
     return new ModelAndView("boxlets/archive", "items", list);
   }
@@ -0,0 +1,265 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.spring.boxlets;
+
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш данных бокслетов.
+ *
+ * Данные, старше заданного бокслетом времени жизни, продолжают отдаваться,
+ * пока фоновый поток выполняет запрос заново (stale-while-revalidate): запрос
+ * страницы ждет базу только при первом обращении к бокслету. Одновременно
+ * выполняется не больше одного обновления каждой записи. Устаревшие записи,
+ * к которым недавно обращались, обновляются и без запросов страниц, см.
+ * refreshExpired; записи, к которым долго не обращались, удаляются.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=BoxletCache")
+public class BoxletCache {
+  private static final Logger logger = LoggerFactory.getLogger(BoxletCache.class);
+
+  private static final long MAX_IDLE_MILLIS = 60 * 60 * 1000;
+  private static final long REFRESH_INTERVAL = 5 * 1000;
+
+  private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+  private final ThreadPoolExecutor refreshPool = new ThreadPoolExecutor(
+          2, 2,
+          0, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(100),
+          new ThreadFactoryBuilder().setNameFormat("boxlet-refresh-%d").setDaemon(true).build()
+  );
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong loads = new AtomicLong();
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong refreshFailures = new AtomicLong();
+
+  @PreDestroy
+  public void shutdown() {
+    refreshPool.shutdownNow();
+  }
+
+  /**
+   * Получить данные бокслета
+   *
+   * @param name имя бокслета
+   * @param key параметры данных, например число сообщений на странице
+   * @param ttlMillis время, после которого данные обновляются в фоне
+   * @param loader запрос данных; не должен зависеть от текущего HTTP запроса
+   * @return данные, возможно устаревшие не больше чем на время обновления
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(
+          @Nonnull String name,
+          @Nonnull Object key,
+          long ttlMillis,
+          @Nonnull Callable<T> loader
+  ) throws Exception {
+    Key cacheKey = new Key(name, key);
+
+    Entry entry = entries.get(cacheKey);
+
+    if (entry == null) {
+      Entry created = new Entry(ttlMillis, loader);
+      entry = entries.putIfAbsent(cacheKey, created);
+
+      if (entry == null) {
+        entry = created;
+      }
+    }
+
+    entry.lastAccess = System.currentTimeMillis();
+
+    Object value = entry.value;
+
+    if (value == null) {
+      // первое обращение: остальные запросы ждут ту же загрузку
+      synchronized (entry) {
+        if (entry.value == null) {
+          entry.value = entry.loader.call();
+          entry.loaded = System.currentTimeMillis();
+          loads.incrementAndGet();
+        } else {
+          hits.incrementAndGet();
+        }
+
+        return (T) entry.value;
+      }
+    }
+
+    if (entry.isExpired()) {
+      staleHits.incrementAndGet();
+      refresh(cacheKey, entry);
+    } else {
+      hits.incrementAndGet();
+    }
+
+    return (T) value;
+  }
+
+  private void refresh(final Key key, final Entry entry) {
+    if (!entry.refreshing.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      refreshPool.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Object value = entry.loader.call();
+
+            entry.value = value;
+            entry.loaded = System.currentTimeMillis();
+            refreshes.incrementAndGet();
+          } catch (Exception ex) {
+            refreshFailures.incrementAndGet();
+            logger.warn("Can't refresh boxlet " + key, ex);
+          } finally {
+            entry.refreshing.set(false);
+          }
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      entry.refreshing.set(false);
+    }
+  }
+
+  @Scheduled(fixedDelay = REFRESH_INTERVAL)
+  public void refreshExpired() {
+    long now = System.currentTimeMillis();
+
+    Iterator<java.util.Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+
+    while (it.hasNext()) {
+      java.util.Map.Entry<Key, Entry> item = it.next();
+      Entry entry = item.getValue();
+
+      if (now - entry.lastAccess > MAX_IDLE_MILLIS) {
+        it.remove();
+      } else if (entry.value != null && entry.isExpired()) {
+        refresh(item.getKey(), entry);
+      }
+    }
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return entries.size();
+  }
+
+  @ManagedAttribute
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @ManagedAttribute
+  public long getStaleHitCount() {
+    return staleHits.get();
+  }
+
+  @ManagedAttribute
+  public long getLoadCount() {
+    return loads.get();
+  }
+
+  @ManagedAttribute
+  public long getRefreshCount() {
+    return refreshes.get();
+  }
+
+  @ManagedAttribute
+  public long getRefreshFailureCount() {
+    return refreshFailures.get();
+  }
+
+  private static class Entry {
+    private final long ttlMillis;
+    private final Callable<?> loader;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Object value;
+    private volatile long loaded;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    private Entry(long ttlMillis, Callable<?> loader) {
+      this.ttlMillis = ttlMillis;
+      this.loader = loader;
+    }
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() - loaded > ttlMillis;
+    }
+  }
+
+  private static class Key {
+    private final String name;
+    private final Object key;
+
+    private Key(String name, Object key) {
+      this.name = name;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      Key other = (Key) o;
+
+      return name.equals(other.name) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(name, key);
+    }
+
+    @Override
+    public String toString() {
+      return name + '/' + key;
+    }
+  }
+}
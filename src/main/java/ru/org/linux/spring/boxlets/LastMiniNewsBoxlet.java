@@ -25,23 +25,32 @@ import ru.org.linux.user.Profile;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  */
 @Controller
 public class LastMiniNewsBoxlet extends AbstractBoxlet{
+  private static final long TTL = 60 * 1000;
 
   @Autowired
   private LastMiniNewsDao lastMiniNewsDao;
 
   @Override
   @RequestMapping("/lastMiniNews.boxlet")
-  protected ModelAndView getData(HttpServletRequest request) {
+  protected ModelAndView getData(HttpServletRequest request) throws Exception {
     Profile profile = Template.getTemplate(request).getProf();
+    final int perPage = profile.getMessages();
 
     Map<String, Object> params = new HashMap<>();
-    params.put("topics", lastMiniNewsDao.getTopics(profile.getMessages()));
+    params.put("topics", cached(perPage, TTL, new Callable<List<LastMiniNewsDao.LastMiniNews>>() {
+      @Override
+      public List<LastMiniNewsDao.LastMiniNews> call() {
+        return lastMiniNewsDao.getTopics(perPage);
+      }
+    }));
 
     return new ModelAndView("boxlets/lastMiniNews", params);
   }
@@ -24,10 +24,12 @@ import ru.org.linux.tag.TagCloudDao.TagDTO;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @Controller
 public class TagCloudBoxlet extends AbstractBoxlet {
   private static final int TAGS_IN_CLOUD = 75;
+  private static final long TTL = 10 * 60 * 1000;
   @Autowired
   private TagCloudDao tagDao;
 
@@ -35,7 +37,12 @@ public class TagCloudBoxlet extends AbstractBoxlet {
   @RequestMapping("/tagcloud.boxlet")
   protected ModelAndView getData(HttpServletRequest request) throws Exception {
 
-    List<TagDTO> list = tagDao.getTags(TAGS_IN_CLOUD);
+    List<TagDTO> list = cached("", TTL, new Callable<List<TagDTO>>() {
+      @Override
+      public List<TagDTO> call() {
+        return tagDao.getTags(TAGS_IN_CLOUD);
+      }
+    });
     return new ModelAndView("boxlets/tagcloud", "tags", list);
   }
 }
@@ -30,9 +30,12 @@ import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 @Controller
 public class TopTenBoxlet extends AbstractBoxlet {
+  private static final long TTL = 2 * 60 * 1000;
+
   private TopTenDao topTenDao;
 
   public TopTenDao getTopTenDao() {
@@ -46,10 +49,24 @@ public class TopTenBoxlet extends AbstractBoxlet {
 
   @Override
   @RequestMapping("/top10.boxlet")
-  protected ModelAndView getData(HttpServletRequest request) {
+  protected ModelAndView getData(HttpServletRequest request) throws Exception {
     Profile profile = Template.getTemplate(request).getProf();
     final int itemsPerPage = profile.getMessages();
 
+    List<TopTenMessageDTO> list = cached(itemsPerPage, TTL, new Callable<List<TopTenMessageDTO>>() {
+      @Override
+      public List<TopTenMessageDTO> call() {
+        return getMessages(itemsPerPage);
+      }
+    });
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("messages", list);
+
+    return new ModelAndView("boxlets/top10", params);
+  }
+
+  private List<TopTenMessageDTO> getMessages(final int itemsPerPage) {
     List<TopTenMessageDTO> list = topTenDao.getMessages();
     CollectionUtils.forAllDo(list, new Closure() {
       @Override
@@ -61,9 +78,6 @@ public class TopTenBoxlet extends AbstractBoxlet {
       }
     });
 
-    Map<String, Object> params = new HashMap<>();
-    params.put("messages", list);
-
-    return new ModelAndView("boxlets/top10", params);
+    return list;
   }
 }
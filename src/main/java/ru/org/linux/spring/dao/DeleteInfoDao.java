@@ -16,10 +16,14 @@
 package ru.org.linux.spring.dao;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.org.linux.site.DeleteInfo;
 import ru.org.linux.site.DeleteInfoStat;
@@ -31,7 +35,9 @@ import javax.sql.DataSource;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Получение информации кем и почему удален топик
@@ -39,6 +45,7 @@ import java.util.List;
 @Repository
 public class DeleteInfoDao {
   private JdbcTemplate jdbcTemplate;
+  private NamedParameterJdbcTemplate namedJdbcTemplate;
   private static final String QUERY_DELETE_INFO = "SELECT reason,delby as userid, deldate, bonus FROM del_info WHERE msgid=?";
   private static final String QUERY_DELETE_INFO_FOR_UPDATE = "SELECT reason,delby as userid, deldate, bonus FROM del_info WHERE msgid=? FOR UPDATE";
   private static final String INSERT_DELETE_INFO = "INSERT INTO del_info (msgid, delby, reason, deldate, bonus) values(?,?,?, CURRENT_TIMESTAMP, ?)";
@@ -46,6 +53,7 @@ public class DeleteInfoDao {
   @Autowired
   public void setJdbcTemplate(DataSource dataSource) {
     jdbcTemplate = new JdbcTemplate(dataSource);
+    namedJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
   }
 
   /**
@@ -70,17 +78,7 @@ public class DeleteInfoDao {
             new RowMapper<DeleteInfo>() {
       @Override
       public DeleteInfo mapRow(ResultSet resultSet, int i) throws SQLException {
-        Integer bonus = resultSet.getInt("bonus");
-        if (resultSet.wasNull()) {
-          bonus = null;
-        }
-
-        return new DeleteInfo(
-                resultSet.getInt("userid"),
-                resultSet.getString("reason"),
-                resultSet.getTimestamp("deldate"),
-                bonus
-        );
+        return mapDeleteInfo(resultSet);
       }
     }, id);
 
@@ -91,6 +89,46 @@ public class DeleteInfoDao {
     }
   }
 
+  /**
+   * Кто, когда и почему удалил сообщения, одним запросом
+   * @param ids id проверяемых сообщений
+   * @return информация о удаленных сообщениях, ключ - id сообщения
+   */
+  @Nonnull
+  public Map<Integer, DeleteInfo> getDeleteInfo(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    final Map<Integer, DeleteInfo> out = Maps.newHashMapWithExpectedSize(ids.size());
+
+    namedJdbcTemplate.query(
+            "SELECT msgid, reason, delby as userid, deldate, bonus FROM del_info WHERE msgid IN (:list)",
+            ImmutableMap.of("list", ids),
+            new RowCallbackHandler() {
+              @Override
+              public void processRow(ResultSet resultSet) throws SQLException {
+                out.put(resultSet.getInt("msgid"), mapDeleteInfo(resultSet));
+              }
+            });
+
+    return out;
+  }
+
+  private static DeleteInfo mapDeleteInfo(ResultSet resultSet) throws SQLException {
+    Integer bonus = resultSet.getInt("bonus");
+    if (resultSet.wasNull()) {
+      bonus = null;
+    }
+
+    return new DeleteInfo(
+            resultSet.getInt("userid"),
+            resultSet.getString("reason"),
+            resultSet.getTimestamp("deldate"),
+            bonus
+    );
+  }
+
   public void insert(int msgid, User deleter, String reason, int scoreBonus) {
     Preconditions.checkArgument(scoreBonus <= 0, "Score bonus on delete must be non-positive");
 
@@ -50,6 +50,9 @@ public class MsgbaseDao {
 
   private SimpleJdbcInsert insertMsgbase;
 
+  @Autowired
+  private PlainTextCache plainTextCache;
+
   @Autowired
   public void setDataSource(DataSource dataSource) {
     jdbcTemplate = new JdbcTemplate(dataSource);
@@ -114,6 +117,8 @@ public class MsgbaseDao {
       "UPDATE msgbase SET message=:message WHERE id=:msgid",
       ImmutableMap.of("message", text, "msgid", msgid)
     );
+
+    plainTextCache.invalidate(msgid);
   }
 
   public void appendMessage(int msgid, String text) {
@@ -122,5 +127,7 @@ public class MsgbaseDao {
             text,
             msgid
     );
+
+    plainTextCache.invalidate(msgid);
   }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.spring.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кеш чистого текста сообщений, см. LorCodeService.extractPlainText.
+ *
+ * Ключ - id сообщения; запись хранит исходный текст и отдается только
+ * для того же текста, поэтому запись для старой версии текста не отдается,
+ * даже если инвалидация из MsgbaseDao опередила commit транзакции.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=PlainTextCache")
+public class PlainTextCache {
+  private final Cache<Integer, Entry> cache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(20000)
+                  .expireAfterAccess(1, TimeUnit.HOURS)
+                  .recordStats()
+                  .build();
+
+  @Nullable
+  public String get(int msgid, @Nonnull MessageText text) {
+    Entry entry = cache.getIfPresent(msgid);
+
+    if (entry == null || !entry.isVersionOf(text)) {
+      return null;
+    }
+
+    return entry.plainText;
+  }
+
+  public void put(int msgid, @Nonnull MessageText text, @Nonnull String plainText) {
+    cache.put(msgid, new Entry(text, plainText));
+  }
+
+  /**
+   * Текст сообщения изменился
+   */
+  public void invalidate(int msgid) {
+    cache.invalidate(msgid);
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return cache.size();
+  }
+
+  @ManagedAttribute
+  public double getHitRate() {
+    return cache.stats().hitRate();
+  }
+
+  private static class Entry {
+    private final String source;
+    private final boolean lorcode;
+    private final String plainText;
+
+    private Entry(MessageText text, String plainText) {
+      source = text.getText();
+      lorcode = text.isLorcode();
+      this.plainText = plainText;
+    }
+
+    private boolean isVersionOf(MessageText text) {
+      return lorcode == text.isLorcode() && source.equals(text.getText());
+    }
+  }
+}
@@ -15,12 +15,20 @@
 
 package ru.org.linux.spring.dao;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Информация о UA пользователей
@@ -31,10 +39,12 @@ public class UserAgentDao {
   private static final String queryUserAgentById = "SELECT name FROM user_agents WHERE id=?";
 
   private JdbcTemplate jdbcTemplate;
+  private NamedParameterJdbcTemplate namedJdbcTemplate;
 
   @Autowired
   public void setDataSource(DataSource dataSource) {
     jdbcTemplate = new JdbcTemplate(dataSource);
+    namedJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
   }
 
   /**
@@ -52,4 +62,29 @@ public class UserAgentDao {
       return null;
     }
   }
+
+  /**
+   * получить UA по списку id одним запросом
+   * @param ids список id UA
+   * @return названия UA, ключ - id UA; отсутствующие не включаются
+   */
+  public Map<Integer, String> getUserAgents(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    final Map<Integer, String> out = Maps.newHashMapWithExpectedSize(ids.size());
+
+    namedJdbcTemplate.query(
+            "SELECT id, name FROM user_agents WHERE id IN (:list)",
+            ImmutableMap.of("list", ids),
+            new RowCallbackHandler() {
+              @Override
+              public void processRow(ResultSet resultSet) throws SQLException {
+                out.put(resultSet.getInt("id"), resultSet.getString("name"));
+              }
+            });
+
+    return out;
+  }
 }
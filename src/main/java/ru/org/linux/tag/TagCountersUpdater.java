@@ -15,21 +15,90 @@
 
 package ru.org.linux.tag;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import ru.org.linux.topic.TopicTagDao;
 import ru.org.linux.topic.TopicTagService;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Проверка счётчиков использования тегов.
+ *
+ * Счётчики меняются при создании, правке, удалении и восстановлении топиков
+ * и при замене тегов. Вместо полного пересчёта раз в час задача каждую минуту
+ * проверяет очередную порцию тегов по кругу и перезаписывает только
+ * разошедшиеся счётчики.
+ */
 @Component
+@ManagedResource(objectName = "lor:name=TagCountersUpdater")
 public class TagCountersUpdater {
-  private static final int HOUR = 60*60*1000;
+  private static final Logger logger = LoggerFactory.getLogger(TagCountersUpdater.class);
+
+  private static final int MINUTE = 60 * 1000;
   private static final int FIVE_MINS = 5 * 60 * 1000;
+  private static final int BATCH_SIZE = 500;
 
   @Autowired
   private TopicTagService tagService;
-  
-  @Scheduled(fixedDelay = HOUR, initialDelay = FIVE_MINS)
+
+  @Autowired
+  private TopicTagDao topicTagDao;
+
+  private volatile int lastCheckedId = 0;
+
+  private final AtomicLong checked = new AtomicLong();
+  private final AtomicLong repaired = new AtomicLong();
+
+  @Scheduled(fixedDelay = MINUTE, initialDelay = FIVE_MINS)
+  public void checkTagsCounters() {
+    int from = lastCheckedId;
+
+    List<Integer> ids = topicTagDao.getTagIdsAfter(from, BATCH_SIZE);
+
+    if (ids.isEmpty()) {
+      lastCheckedId = 0;
+      return;
+    }
+
+    int to = ids.get(ids.size() - 1);
+
+    List<Integer> fixed = topicTagDao.repairCounters(from, to);
+
+    if (!fixed.isEmpty()) {
+      logger.info("Исправлены счётчики тегов: " + fixed);
+    }
+
+    checked.addAndGet(ids.size());
+    repaired.addAndGet(fixed.size());
+
+    lastCheckedId = ids.size() < BATCH_SIZE ? 0 : to;
+  }
+
+  @ManagedOperation
   public void recalcTagsCounters() {
     tagService.reCalculateAllCounters();
   }
+
+  @ManagedAttribute
+  public int getLastCheckedId() {
+    return lastCheckedId;
+  }
+
+  @ManagedAttribute
+  public long getCheckedCount() {
+    return checked.get();
+  }
+
+  @ManagedAttribute
+  public long getRepairedCount() {
+    return repaired.get();
+  }
 }
@@ -25,6 +25,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 import ru.org.linux.auth.AccessViolationException;
 import ru.org.linux.group.GroupPermissionService;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.search.SearchQueueSender;
 import ru.org.linux.section.Section;
 import ru.org.linux.section.SectionService;
@@ -61,6 +62,9 @@ public class DeleteTopicController {
   @Autowired
   private UserDao userDao;
 
+  @Autowired
+  private PageCache pageCache;
+
   @RequestMapping(value="/delete.jsp", method= RequestMethod.GET)
   public ModelAndView showForm(
     @RequestParam("msgid") int msgid,
@@ -168,6 +172,7 @@ public class DeleteTopicController {
 
     if(message.isDeleted()) {
       messageDao.undelete(message);
+      pageCache.groupChanged(message.getGroupId());
     }
 
     logger.info("Восстановлено сообщение " + msgid + " пользователем " + tmpl.getNick());
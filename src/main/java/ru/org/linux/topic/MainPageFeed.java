@@ -0,0 +1,231 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import ru.org.linux.pagecache.PageCache;
+import ru.org.linux.section.Section;
+import ru.org.linux.user.Profile;
+import ru.org.linux.user.User;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Лента новостей главной страницы.
+ *
+ * Подготовка новостей (разбор LorCode, теги, картинки, история правок) одинакова
+ * для всех пользователей, поэтому лента готовится один раз для каждого варианта:
+ * с галереей и без, для http и https. Лента пересобирается, когда меняется
+ * поколение разделов новостей и галереи в PageCache. Его меняют TopicService
+ * и CommentService: при подтверждении, правке, переносе или удалении топика,
+ * а также при добавлении, правке и удалении комментариев (в ленте показано
+ * число комментариев). Кроме того, лента устаревает через MAX_AGE_MILLIS.
+ * Пока одна нить пересобирает ленту, остальные получают предыдущую версию.
+ *
+ * На каждый запрос готовятся только данные пользователя: его комментарии
+ * об авторах и меню топиков. Для анонимных пользователей меню тоже общее.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=MainPageFeed")
+public class MainPageFeed {
+  /**
+   * Изменения пользователей (ник, звезды) не отслеживаются
+   */
+  private static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+  private static final Profile ANONYMOUS_PROFILE = Profile.createDefault();
+
+  @Autowired
+  private TopicListService topicListService;
+
+  @Autowired
+  private TopicPrepareService prepareService;
+
+  @Autowired
+  private PageCache pageCache;
+
+  private final AtomicReferenceArray<Feed> feeds = new AtomicReferenceArray<>(4);
+
+  private final ReentrantLock[] locks = {
+          new ReentrantLock(), new ReentrantLock(), new ReentrantLock(), new ReentrantLock()
+  };
+
+  private final AtomicLong rebuilds = new AtomicLong();
+  private final AtomicLong stale = new AtomicLong();
+
+  /**
+   * Лента для пользователя
+   *
+   * @param showGallery показывать галерею
+   * @param skipMinor не показывать мини-новости
+   * @param secure является ли соединение https
+   * @param user пользователь или null для анонимного
+   * @param profile профиль пользователя
+   * @return подготовленные топики
+   */
+  public List<PersonalizedPreparedTopic> getFeed(
+          boolean showGallery,
+          boolean skipMinor,
+          boolean secure,
+          @Nullable User user,
+          Profile profile
+  ) {
+    Feed feed = getFeed(showGallery, secure);
+
+    if (user == null) {
+      return skipMinor ? filterMinor(feed.anonymous) : feed.anonymous;
+    }
+
+    List<PreparedTopic> topics;
+
+    if (skipMinor) {
+      ImmutableList.Builder<PreparedTopic> filtered = ImmutableList.builder();
+
+      for (PreparedTopic topic : feed.topics) {
+        if (!topic.getMessage().isMinor()) {
+          filtered.add(topic);
+        }
+      }
+
+      topics = filtered.build();
+    } else {
+      topics = feed.topics;
+    }
+
+    return prepareService.personalizeMessages(topics, secure, user, profile);
+  }
+
+  private static List<PersonalizedPreparedTopic> filterMinor(List<PersonalizedPreparedTopic> topics) {
+    ImmutableList.Builder<PersonalizedPreparedTopic> filtered = ImmutableList.builder();
+
+    for (PersonalizedPreparedTopic topic : topics) {
+      if (!topic.getPreparedTopic().getMessage().isMinor()) {
+        filtered.add(topic);
+      }
+    }
+
+    return filtered.build();
+  }
+
+  private Feed getFeed(boolean showGallery, boolean secure) {
+    int index = (showGallery ? 2 : 0) + (secure ? 1 : 0);
+
+    Feed feed = feeds.get(index);
+
+    if (isValid(feed, showGallery)) {
+      return feed;
+    }
+
+    ReentrantLock lock = locks[index];
+
+    if (feed != null) {
+      if (!lock.tryLock()) {
+        stale.incrementAndGet();
+        return feed;
+      }
+    } else {
+      lock.lock();
+    }
+
+    try {
+      feed = feeds.get(index);
+
+      if (isValid(feed, showGallery)) {
+        return feed;
+      }
+
+      // поколение читается до выборки: изменение во время подготовки
+      // приведет к повторной сборке
+      long generation = generation(showGallery);
+
+      List<PreparedTopic> topics = prepareService.prepareMessages(
+              topicListService.getMainPageFeed(showGallery),
+              secure
+      );
+
+      feed = new Feed(
+              generation,
+              ImmutableList.copyOf(topics),
+              ImmutableList.copyOf(prepareService.personalizeMessages(topics, secure, null, ANONYMOUS_PROFILE))
+      );
+
+      feeds.set(index, feed);
+      rebuilds.incrementAndGet();
+
+      return feed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isValid(@Nullable Feed feed, boolean showGallery) {
+    return feed != null &&
+            feed.generation == generation(showGallery) &&
+            System.currentTimeMillis() - feed.created < MAX_AGE_MILLIS;
+  }
+
+  /**
+   * Поколения только растут, поэтому их сумма меняется при изменении любого из разделов
+   */
+  private long generation(boolean showGallery) {
+    long generation = pageCache.getSectionGeneration(Section.SECTION_NEWS);
+
+    if (showGallery) {
+      generation += pageCache.getSectionGeneration(Section.SECTION_GALLERY);
+    }
+
+    return generation;
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    for (int i = 0; i < feeds.length(); i++) {
+      feeds.set(i, null);
+    }
+  }
+
+  @ManagedAttribute
+  public long getRebuildCount() {
+    return rebuilds.get();
+  }
+
+  @ManagedAttribute
+  public long getStaleCount() {
+    return stale.get();
+  }
+
+  private static class Feed {
+    private final long generation;
+    private final long created = System.currentTimeMillis();
+    private final List<PreparedTopic> topics;
+    private final List<PersonalizedPreparedTopic> anonymous;
+
+    private Feed(long generation, List<PreparedTopic> topics, List<PersonalizedPreparedTopic> anonymous) {
+      this.generation = generation;
+      this.topics = topics;
+      this.anonymous = anonymous;
+    }
+  }
+}
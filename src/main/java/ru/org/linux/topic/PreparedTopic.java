@@ -96,6 +96,31 @@ public final class PreparedTopic {
     this.remark = remark;
   }
 
+  /**
+   * Копия топика с комментарием пользователя об авторе
+   */
+  public PreparedTopic withRemark(Remark remark) {
+    return new PreparedTopic(
+            message,
+            author,
+            deleteInfo,
+            deleteUser,
+            processedMessage,
+            poll,
+            commiter,
+            tags,
+            group,
+            section,
+            lastEditDate,
+            lastEditor,
+            editCount,
+            lorcode,
+            image,
+            postscoreInfo,
+            remark
+    );
+  }
+
   public Topic getMessage() {
     return message;
   }
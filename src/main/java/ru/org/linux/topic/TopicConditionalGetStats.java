@@ -0,0 +1,59 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчики условных запросов страниц топиков анонимными пользователями:
+ * сколько запросов завершилось ответом 304 без подготовки страницы
+ */
+@Component
+@ManagedResource(objectName = "lor:name=TopicConditionalGet")
+public class TopicConditionalGetStats {
+  private final AtomicLong notModified = new AtomicLong();
+  private final AtomicLong modified = new AtomicLong();
+
+  public void registerNotModified() {
+    notModified.incrementAndGet();
+  }
+
+  public void registerModified() {
+    modified.incrementAndGet();
+  }
+
+  @ManagedAttribute
+  public long getNotModifiedCount() {
+    return notModified.get();
+  }
+
+  @ManagedAttribute
+  public long getModifiedCount() {
+    return modified.get();
+  }
+
+  @ManagedAttribute
+  public double getNotModifiedRate() {
+    long hits = notModified.get();
+    long total = hits + modified.get();
+
+    return total == 0 ? 0 : (double) hits / total;
+  }
+}
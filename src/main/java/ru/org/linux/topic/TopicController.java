@@ -28,6 +28,7 @@ import ru.org.linux.auth.IPBlockDao;
 import ru.org.linux.auth.IPBlockInfo;
 import ru.org.linux.comment.*;
 import ru.org.linux.group.Group;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.paginator.PagesInfo;
 import ru.org.linux.search.MoreLikeThisService;
 import ru.org.linux.search.MoreLikeThisTopic;
@@ -94,6 +95,12 @@ public class TopicController {
   @Autowired
   private LorCodeService lorCodeService;
 
+  @Autowired
+  private TopicConditionalGetStats conditionalGetStats;
+
+  @Autowired
+  private PageCache pageCache;
+
   @RequestMapping("/{section:(?:forum)|(?:news)|(?:polls)|(?:gallery)}/{group}/{id}")
   public ModelAndView getMessageNewMain(
     WebRequest webRequest,
@@ -178,24 +185,7 @@ public class TopicController {
     Topic topic = messageDao.getById(msgid);
     Template tmpl = Template.getTemplate(request);
 
-    Map<String, Object> params = new HashMap<>();
-
-    List<TagRef> tags = topicTagService.getTagRefs(topic);
-
-    MessageText messageText = msgbaseDao.getMessageText(topic.getId());
-    String plainText = lorCodeService.extractPlainText(messageText);
-
-    Future<List<List<MoreLikeThisTopic>>> moreLikeThis = moreLikeThisService.search(topic, tags, plainText);
-
-    PreparedTopic preparedMessage = messagePrepareService.prepareTopic(
-            topic,
-            tags,
-            request.isSecure(),
-            tmpl.getCurrentUser(),
-            messageText
-    );
-
-    Group group = preparedMessage.getGroup();
+    Group group = messageDao.getGroup(topic);
 
     if (!group.getUrlName().equals(groupName) || group.getSectionId() != section.getId()) {
       return new ModelAndView(new RedirectView(topic.getLink()));
@@ -232,43 +222,67 @@ public class TopicController {
       }
     }
 
-    params.put("showDeleted", showDeleted);
-
     User currentUser = AuthUtil.getCurrentUser();
 
     permissionService.checkView(group, topic, currentUser, showDeleted);
 
-    params.put("message", topic);
-    params.put("preparedMessage", preparedMessage);
-
     if (topic.isExpired()) {
       response.setDateHeader("Expires", System.currentTimeMillis() + 30 * 24 * 60 * 60 * 1000L);
     }
 
-    CommentList comments = commentService.getCommentList(topic, showDeleted);
-
-    if (messageText.isLorcode()) {
-      params.put("ogDescription", lorCodeService.trimPlainText(plainText, 250, true));
-    }
-
-    params.put("page", page);
-    params.put("group", group);
-    params.put("showAdsense", !tmpl.isSessionAuthorized() || !tmpl.getProf().isHideAdsense());
-
+    // проверка до подготовки страницы: для ответа 304 не нужны ни текст, ни комментарии
     if (!tmpl.isSessionAuthorized()) { // because users have IgnoreList and memories
-      String etag = getEtag(topic);
+      String etag = getEtag(topic, page, filter);
       response.setHeader("Etag", etag);
 
       if (request.getHeader("If-None-Match") != null) {
         if (etag.equals(request.getHeader("If-None-Match"))) {
           response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+          conditionalGetStats.registerNotModified();
           return null;
         }
       } else if (checkLastModified(webRequest, topic)) {
+        conditionalGetStats.registerNotModified();
         return null;
       }
+
+      conditionalGetStats.registerModified();
+
+      pageCache.cacheTopicPage(request, topic);
     }
 
+    Map<String, Object> params = new HashMap<>();
+
+    List<TagRef> tags = topicTagService.getTagRefs(topic);
+
+    MessageText messageText = msgbaseDao.getMessageText(topic.getId());
+
+    Future<List<List<MoreLikeThisTopic>>> moreLikeThis = moreLikeThisService.search(topic);
+
+    PreparedTopic preparedMessage = messagePrepareService.prepareTopic(
+            topic,
+            tags,
+            request.isSecure(),
+            tmpl.getCurrentUser(),
+            messageText
+    );
+
+    params.put("showDeleted", showDeleted);
+
+    params.put("message", topic);
+    params.put("preparedMessage", preparedMessage);
+
+    CommentList comments = commentService.getCommentList(topic, showDeleted);
+
+    if (messageText.isLorcode()) {
+      String plainText = lorCodeService.extractPlainText(topic.getId(), messageText);
+      params.put("ogDescription", lorCodeService.trimPlainText(plainText, 250, true));
+    }
+
+    params.put("page", page);
+    params.put("group", group);
+    params.put("showAdsense", !tmpl.isSessionAuthorized() || !tmpl.getProf().isHideAdsense());
+
     params.put("messageMenu", messagePrepareService.getTopicMenu(
             preparedMessage,
             currentUser,
@@ -490,8 +504,14 @@ public class TopicController {
     }
   }
 
-  private static String getEtag(Topic message) {
-    return "msg-"+message.getId()+ '-' +message.getLastModified().getTime();
+  private static String getEtag(Topic message, int page, String filter) {
+    String etag = "msg-" + message.getId() + '-' + message.getLastModified().getTime() + '-' + page;
+
+    if (filter != null) {
+      return etag + '-' + CommentFilter.toString(CommentFilter.parseFilterChain(filter));
+    } else {
+      return etag;
+    }
   }
 
   private ModelAndView jumpMessage(
@@ -16,6 +16,7 @@
 package ru.org.linux.topic;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +52,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -93,10 +95,25 @@ public class TopicDao {
         "INNER JOIN groups ON (groups.id=topics.groupid) " +
         "INNER JOIN sections ON (sections.id=groups.section) " +
         "WHERE topics.id=?";
+
+  /**
+   * Запрос полной информации о списке топиков
+   */
+  private static final String queryMessages = "SELECT " +
+        "postdate, topics.id as msgid, userid, topics.title, " +
+        "topics.groupid as guid, topics.url, topics.linktext, ua_id, " +
+        "urlname, section, topics.sticky, topics.postip, " +
+        "postdate<(CURRENT_TIMESTAMP-sections.expire) as expired, deleted, lastmod, commitby, " +
+        "commitdate, topics.stat1, postscore, topics.moderate, notop, " +
+        "topics.resolved, minor, draft " +
+        "FROM topics " +
+        "INNER JOIN groups ON (groups.id=topics.groupid) " +
+        "INNER JOIN sections ON (sections.id=groups.section) " +
+        "WHERE topics.id IN (:list) ORDER BY topics.id";
   /**
    * Удаление топика
    */
-  private static final String updateUndeleteMessage = "UPDATE topics SET deleted='f' WHERE id=?";
+  private static final String updateUndeleteMessage = "UPDATE topics SET deleted='f' WHERE id=? AND deleted";
   private static final String updateUneleteInfo = "DELETE FROM del_info WHERE msgid=?";
 
   private static final String queryTopicsIdByTime = "SELECT id FROM topics WHERE postdate>=? AND postdate<?";
@@ -159,6 +176,26 @@ public class TopicDao {
     return message;
   }
 
+  /**
+   * Получить список топиков одним запросом
+   *
+   * @param ids id топиков
+   * @return найденные топики в порядке возрастания id
+   */
+  @Nonnull
+  public List<Topic> getByIds(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    return namedJdbcTemplate.query(queryMessages, ImmutableMap.of("list", ids), new RowMapper<Topic>() {
+      @Override
+      public Topic mapRow(ResultSet resultSet, int i) throws SQLException {
+        return new Topic(resultSet);
+      }
+    });
+  }
+
   /**
    * Получить group message
    * @param message message
@@ -188,8 +225,28 @@ public class TopicDao {
     }, ts_start, ts_end);
   }
 
+  /**
+   * Топики, измененные за последние дни
+   *
+   * @param days число дней
+   * @return id топиков
+   */
+  public List<Integer> getRecentlyModifiedIds(int days) {
+    return jdbcTemplate.queryForList(
+            "SELECT id FROM topics WHERE lastmod>CURRENT_TIMESTAMP-?*'1 day'::interval AND NOT deleted AND NOT draft",
+            Integer.class,
+            days
+    );
+  }
+
   public boolean delete(int msgid) {
-    return jdbcTemplate.update("UPDATE topics SET deleted='t',sticky='f' WHERE id=? AND NOT deleted", msgid)>0;
+    boolean deleted = jdbcTemplate.update("UPDATE topics SET deleted='t',sticky='f' WHERE id=? AND NOT deleted", msgid)>0;
+
+    if (deleted) {
+      topicTagService.topicDeleted(msgid);
+    }
+
+    return deleted;
   }
 
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
@@ -200,7 +257,10 @@ public class TopicDao {
       userDao.changeScore(message.getUid(), -deleteInfo.getBonus());
     }
 
-    jdbcTemplate.update(updateUndeleteMessage, message.getId());
+    if (jdbcTemplate.update(updateUndeleteMessage, message.getId()) > 0) {
+      topicTagService.topicUndeleted(message.getId());
+    }
+
     jdbcTemplate.update(updateUneleteInfo, message.getId());
   }
 
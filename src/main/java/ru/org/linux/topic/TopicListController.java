@@ -25,6 +25,7 @@ import org.springframework.web.servlet.view.RedirectView;
 import ru.org.linux.group.Group;
 import ru.org.linux.group.GroupDao;
 import ru.org.linux.group.GroupNotFoundException;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.section.Section;
 import ru.org.linux.section.SectionNotFoundException;
 import ru.org.linux.section.SectionService;
@@ -57,6 +58,9 @@ public class TopicListController {
   @Autowired
   private GroupDao groupDao;
 
+  @Autowired
+  private PageCache pageCache;
+
   private ModelAndView mainTopicsFeedHandler(
     HttpServletRequest request,
     TopicListRequest topicListForm,
@@ -71,6 +75,14 @@ public class TopicListController {
     checkRequestConditions(section, group, topicListForm);
     Template tmpl = Template.getTemplate(request);
 
+    if (!tmpl.isSessionAuthorized()) {
+      if (group != null) {
+        pageCache.cacheGroupPage(request, group);
+      } else if (section != null) {
+        pageCache.cacheSectionPage(request, section.getId());
+      }
+    }
+
     ModelAndView modelAndView = new ModelAndView("view-news");
 
     modelAndView.addObject("group", group);
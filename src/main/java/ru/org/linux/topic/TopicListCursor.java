@@ -0,0 +1,119 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import com.google.common.base.Strings;
+import ru.org.linux.util.ServletParameterBadValueException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.Timestamp;
+
+/**
+ * Позиция в списке топиков, отсортированном по убыванию (дата, id).
+ *
+ * Следующая страница выбирается условием (дата, id) &lt; (cursor.time, cursor.id)
+ * вместо OFFSET, поэтому глубокие страницы стоят столько же, сколько первая.
+ * В URL курсор передается строкой, см. toString; дата хранится с точностью
+ * до микросекунды, как в PostgreSQL. Id может быть отрицательным: так в трекере
+ * нумеруются изменения вики.
+ */
+public final class TopicListCursor {
+  public static final String PARAMETER = "cursor";
+
+  private final long micros;
+  private final int id;
+
+  private TopicListCursor(long micros, int id) {
+    this.micros = micros;
+    this.id = id;
+  }
+
+  public static TopicListCursor of(@Nonnull Timestamp time, int id) {
+    long seconds = time.getTime() / 1000;
+
+    return new TopicListCursor(seconds * 1000000 + time.getNanos() / 1000, id);
+  }
+
+  /**
+   * Разобрать курсор из параметра запроса
+   *
+   * @param value значение параметра
+   * @return курсор или null, если параметр не указан
+   * @throws ServletParameterBadValueException если курсор поврежден
+   */
+  @Nullable
+  public static TopicListCursor parse(@Nullable String value) throws ServletParameterBadValueException {
+    if (Strings.isNullOrEmpty(value)) {
+      return null;
+    }
+
+    int separator = value.indexOf('.');
+
+    if (separator <= 0) {
+      throw new ServletParameterBadValueException(PARAMETER, "некорректный курсор");
+    }
+
+    try {
+      long micros = Long.parseLong(value.substring(0, separator), Character.MAX_RADIX);
+      int id = Integer.parseInt(value.substring(separator + 1), Character.MAX_RADIX);
+
+      if (micros < 0) {
+        throw new ServletParameterBadValueException(PARAMETER, "некорректный курсор");
+      }
+
+      return new TopicListCursor(micros, id);
+    } catch (NumberFormatException ex) {
+      throw new ServletParameterBadValueException(PARAMETER, "некорректный курсор");
+    }
+  }
+
+  public Timestamp getTime() {
+    Timestamp time = new Timestamp(micros / 1000000 * 1000);
+    time.setNanos((int) (micros % 1000000) * 1000);
+
+    return time;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(micros, Character.MAX_RADIX) + '.' + Integer.toString(id, Character.MAX_RADIX);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    TopicListCursor that = (TopicListCursor) o;
+
+    return micros == that.micros && id == that.id;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (int) (micros ^ (micros >>> 32)) + id;
+  }
+}
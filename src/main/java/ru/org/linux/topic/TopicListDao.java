@@ -15,19 +15,24 @@
 
 package ru.org.linux.topic;
 
+import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 @Repository
@@ -51,9 +56,19 @@ public class TopicListDao {
 
   public List<Topic> getTopics(TopicListDto topicListDto) {
     logger.debug("TopicListDao.getTopics(); topicListDto = " + topicListDto.toString());
-    String where = makeConditions(topicListDto);
+    List<Object> queryParameters = new ArrayList<>();
+
+    String where = makeConditions(topicListDto, queryParameters);
+    TopicListCursor cursor = topicListDto.getCursor();
+
+    if (cursor != null) {
+      where += " AND (" + sortExpression(topicListDto) + ", topics.id) < (?, ?) ";
+      queryParameters.add(cursor.getTime());
+      queryParameters.add(cursor.getId());
+    }
+
     String sort = makeSortOrder(topicListDto);
-    String limit = makeLimitAndOffset(topicListDto);
+    String limit = makeLimitAndOffset(topicListDto, queryParameters);
 
     StringBuilder query = new StringBuilder();
 
@@ -81,6 +96,7 @@ public class TopicListDao {
 
     return jdbcTemplate.query(
       query.toString(),
+      queryParameters.toArray(),
       new RowMapper<Topic>() {
         @Override
         public Topic mapRow(ResultSet resultSet, int i) throws SQLException {
@@ -90,6 +106,35 @@ public class TopicListDao {
     );
   }
 
+  /**
+   * Курсор следующей страницы
+   *
+   * @param topicListDto условия выборки
+   * @param topic последний топик текущей страницы
+   * @return позиция после topic
+   */
+  public static TopicListCursor nextCursor(TopicListDto topicListDto, Topic topic) {
+    Timestamp time;
+
+    if (topicListDto.isLastmodSort()) {
+      time = topic.getLastModified();
+    } else {
+      switch (topicListDto.getCommitMode()) {
+        case COMMITED_ONLY:
+          time = topic.getCommitDate();
+          break;
+        case UNCOMMITED_ONLY:
+        case POSTMODERATED_ONLY:
+          time = topic.getPostdate();
+          break;
+        default:
+          time = topic.getCommitDate() != null ? topic.getCommitDate() : topic.getPostdate();
+      }
+    }
+
+    return TopicListCursor.of(time, topic.getId());
+  }
+
   /**
    * Возвращает удаленные темы в премодерируемом разделе.
    *
@@ -143,71 +188,61 @@ public class TopicListDao {
   /**
    * Создание условий выборки SQL-запроса.
    *
+   * Значения передаются только через параметры, текст запроса зависит лишь от набора
+   * условий: так PostgreSQL и пул соединений переиспользуют подготовленные запросы.
+   *
    * @param topicListDto объект, содержащий условия выборки
+   * @param queryParameters список, в который добавляются значения параметров
    * @return строка, содержащая условия выборки SQL-запроса
    */
-  private static String makeConditions(TopicListDto topicListDto) {
+  private static String makeConditions(TopicListDto topicListDto, List<Object> queryParameters) {
     StringBuilder where = new StringBuilder(
       "NOT deleted"
     );
     where.append(topicListDto.getCommitMode().getQueryPiece());
 
     if (!topicListDto.getSections().isEmpty()) {
-      StringBuilder whereSections = new StringBuilder();
+      List<Integer> sections = new ArrayList<>();
 
       for (Integer section : topicListDto.getSections()) {
-        if (section == null || section == 0) {
-          continue;
-        }
-        if (whereSections.length() != 0) {
-          whereSections.append(',');
+        if (section != null && section != 0) {
+          sections.add(section);
         }
-        whereSections.append(section);
       }
-      if (whereSections.length() != 0) {
-        where
-          .append(" AND section in (")
-          .append(whereSections)
-          .append(')');
+
+      if (!sections.isEmpty()) {
+        where.append(" AND section = ANY (?)");
+        queryParameters.add(intArray(sections));
       }
     }
 
     if (topicListDto.getGroup() != 0) {
-      where
-        .append(" AND groupid=")
-        .append(topicListDto.getGroup());
+      where.append(" AND groupid=?");
+      queryParameters.add(topicListDto.getGroup());
     }
 
-    DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
     switch (topicListDto.getDateLimitType()) {
       case BETWEEN:
-        where
-          .append(" AND postdate>='")
-          .append(dateFormat.format(topicListDto.getFromDate()))
-          .append("'::timestamp AND postdate<'")
-          .append(dateFormat.format(topicListDto.getToDate()))
-          .append("'::timestamp ");
+        where.append(" AND postdate>=? AND postdate<? ");
+        queryParameters.add(startOfDay(topicListDto.getFromDate()));
+        queryParameters.add(startOfDay(topicListDto.getToDate()));
         break;
       case FROM_DATE:
-        where
-          .append("AND postdate>'")
-          .append(dateFormat.format(topicListDto.getFromDate()))
-          .append("'::timestamp ");
+        where.append(" AND postdate>? ");
+        queryParameters.add(startOfDay(topicListDto.getFromDate()));
         break;
       default:
     }
 
     if (topicListDto.getUserId() != 0) {
       if (topicListDto.isUserFavs()) {
-        where
-          .append(" AND memories.userid=")
-          .append(topicListDto.getUserId());
+        where.append(" AND memories.userid=?");
       } else {
-        where
-          .append(" AND userid=")
-          .append(topicListDto.getUserId());
+        where.append(" AND userid=?");
       }
 
+      queryParameters.add(topicListDto.getUserId());
+
       if (topicListDto.isUserFavs()) {
         if (topicListDto.isUserWatches()) {
           where.append(" AND watch ");
@@ -226,10 +261,8 @@ public class TopicListDao {
     }
 
     if (topicListDto.getTag() != 0) {
-      where
-        .append(" AND topics.id IN (SELECT msgid FROM tags WHERE tagid=")
-        .append(topicListDto.getTag())
-        .append(')');
+      where.append(" AND topics.id IN (SELECT msgid FROM tags WHERE tagid=?)");
+      queryParameters.add(topicListDto.getTag());
     }
 
     if (!topicListDto.isShowDraft()) {
@@ -241,6 +274,32 @@ public class TopicListDao {
     return where.toString();
   }
 
+  /**
+   * Начало суток; раньше дата подставлялась в запрос строкой без времени
+   */
+  private static Timestamp startOfDay(Date date) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTime(date);
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+
+    return new Timestamp(calendar.getTimeInMillis());
+  }
+
+  /**
+   * Параметр-массив для условия "= ANY (?)": число элементов не меняет текст запроса
+   */
+  private static SqlTypeValue intArray(final List<Integer> values) {
+    return new AbstractSqlTypeValue() {
+      @Override
+      protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+        return con.createArrayOf("int4", values.toArray());
+      }
+    };
+  }
+
   /**
    * Создание условий сортировки SQL-запроса.
    *
@@ -248,23 +307,35 @@ public class TopicListDao {
    * @return строка, содержащая условия сортировки
    */
   private static String makeSortOrder(TopicListDto topicListDto) {
-    if (topicListDto.isLastmodSort()) {
-      return "ORDER BY lastmod DESC";
+    if (topicListDto.isUserFavs() && !topicListDto.isLastmodSort()) {
+      return " ORDER BY memories.id DESC";
     }
 
-    if (topicListDto.isUserFavs()) {
-      return "ORDER BY memories.id DESC";
+    return " ORDER BY " + sortExpression(topicListDto) + " DESC, topics.id DESC";
+  }
+
+  /**
+   * Дата, по которой сортируется список; вместе с id топика образует ключ курсора
+   *
+   * @param topicListDto объект, содержащий условия выборки
+   * @return SQL выражение
+   */
+  private static String sortExpression(TopicListDto topicListDto) {
+    if (topicListDto.isLastmodSort()) {
+      return "lastmod";
     }
 
+    Preconditions.checkArgument(!topicListDto.isUserFavs(), "cursor is not supported for favorites");
+
     switch (topicListDto.getCommitMode()) {
       case COMMITED_ONLY:
-        return " ORDER BY commitdate DESC";
+        return "commitdate";
       case UNCOMMITED_ONLY:
-        return " ORDER BY postdate DESC";
+        return "postdate";
       case POSTMODERATED_ONLY:
-        return " ORDER BY postdate DESC";
+        return "postdate";
       default:
-        return " ORDER BY COALESCE(commitdate, postdate) DESC";
+        return "COALESCE(commitdate, postdate)";
     }
   }
 
@@ -272,16 +343,19 @@ public class TopicListDao {
    * Создание ограничений размера результатов SQL-запроса.
    *
    * @param topicListDto объект, содержащий условия выборки
+   * @param queryParameters список, в который добавляются значения параметров
    * @return строка, содержащая смещение и количество записей
    */
-  private static String makeLimitAndOffset(TopicListDto topicListDto) {
+  private static String makeLimitAndOffset(TopicListDto topicListDto, List<Object> queryParameters) {
     String limitStr = "";
     if (topicListDto.getLimit() != null) {
-      limitStr += " LIMIT " + topicListDto.getLimit().toString();
+      limitStr += " LIMIT ?";
+      queryParameters.add(topicListDto.getLimit());
     }
 
     if (topicListDto.getOffset() != null) {
-      limitStr += " OFFSET " + topicListDto.getOffset().toString();
+      limitStr += " OFFSET ?";
+      queryParameters.add(topicListDto.getOffset());
     }
     return limitStr;
   }
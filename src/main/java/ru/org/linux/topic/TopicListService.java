@@ -25,6 +25,7 @@ import ru.org.linux.tag.TagService;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserErrorException;
 
+import javax.annotation.Nullable;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -33,6 +34,8 @@ import java.util.List;
 public class TopicListService {
   private static final Logger logger = LoggerFactory.getLogger(TopicListService.class);
 
+  private static final int USER_TOPICS_PAGE = 20;
+
   @Autowired
   private TagService tagService;
 
@@ -165,23 +168,65 @@ public class TopicListService {
   }
 
   /**
-   * Получение списка черновиков пользователя.
+   * Получение страницы топиков пользователя.
+   *
+   * @param user    объект пользователя
+   * @param section секция, из которой выбрать сообщения
+   * @param cursor  позиция, после которой выбирать топики, или null для первой страницы
+   * @return список топиков пользователя
+   */
+  public List<Topic> getUserTopicsFeed(User user, @Nullable Section section, @Nullable TopicListCursor cursor) {
+    TopicListDto topicListDto = makeUserTopicsDto(user, cursor);
+
+    if (section != null) {
+      topicListDto.setSection(section.getId());
+    }
+
+    return topicListDao.getTopics(topicListDto);
+  }
+
+  /**
+   * Получение страницы черновиков пользователя.
    *
    * @param user       объект пользователя
-   * @param offset     смещение в результатах выборки
+   * @param cursor     позиция, после которой выбирать топики, или null для первой страницы
    * @return список топиков пользователя
    */
-  public List<Topic> getDrafts(User user, Integer offset) {
-    TopicListDto topicListDto = new TopicListDto();
-    topicListDto.setLimit(20);
-    topicListDto.setOffset(offset);
-    topicListDto.setCommitMode(TopicListDao.CommitMode.ALL);
-    topicListDto.setUserId(user.getId());
+  public List<Topic> getDrafts(User user, @Nullable TopicListCursor cursor) {
+    TopicListDto topicListDto = makeUserTopicsDto(user, cursor);
     topicListDto.setShowDraft(true);
 
     return topicListDao.getTopics(topicListDto);
   }
 
+  /**
+   * Курсор следующей страницы для getUserTopicsFeed и getDrafts.
+   *
+   * @param topics текущая страница
+   * @return курсор или null, если страница последняя
+   */
+  @Nullable
+  public TopicListCursor getUserTopicsNextCursor(List<Topic> topics) {
+    if (topics.size() < USER_TOPICS_PAGE) {
+      return null;
+    }
+
+    return TopicListDao.nextCursor(makeUserTopicsDto(null, null), topics.get(topics.size() - 1));
+  }
+
+  private static TopicListDto makeUserTopicsDto(@Nullable User user, @Nullable TopicListCursor cursor) {
+    TopicListDto topicListDto = new TopicListDto();
+    topicListDto.setLimit(USER_TOPICS_PAGE);
+    topicListDto.setCursor(cursor);
+    topicListDto.setCommitMode(TopicListDao.CommitMode.ALL);
+
+    if (user != null) {
+      topicListDto.setUserId(user.getId());
+    }
+
+    return topicListDto;
+  }
+
 
   /**
    * Получение списка топиков для RSS-ленты.
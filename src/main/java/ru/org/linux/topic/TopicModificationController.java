@@ -27,6 +27,7 @@ import org.springframework.web.servlet.view.RedirectView;
 import ru.org.linux.auth.AccessViolationException;
 import ru.org.linux.group.Group;
 import ru.org.linux.group.GroupDao;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.section.Section;
 import ru.org.linux.section.SectionService;
 import ru.org.linux.site.Template;
@@ -56,6 +57,9 @@ public class TopicModificationController {
   @Autowired
   private UserDao userDao;
 
+  @Autowired
+  private PageCache pageCache;
+
   @RequestMapping(value="/setpostscore.jsp", method= RequestMethod.GET)
   public ModelAndView showForm(
     ServletRequest request,
@@ -107,6 +111,7 @@ public class TopicModificationController {
     Topic msg = messageDao.getById(msgid);
 
     messageDao.setTopicOptions(msg, postscore, sticky, notop);
+    pageCache.groupChanged(msg.getGroupId());
 
     StringBuilder out = new StringBuilder();
 
@@ -155,6 +160,8 @@ public class TopicModificationController {
 
     if (msg.getGroupId()!=newGrp.getId()) {
       messageDao.moveTopic(msg, newGrp, tmpl.getCurrentUser());
+      pageCache.groupChanged(msg.getGroupId());
+      pageCache.groupChanged(newGrp.getId());
     }
 
     return new RedirectView(TopicLinkBuilder.baseLink(msg).forceLastmod().build());
@@ -244,6 +251,7 @@ public class TopicModificationController {
     checkUncommitable(message);
 
     messageDao.uncommit(message);
+    pageCache.groupChanged(message.getGroupId());
 
     logger.info("Отменено подтверждение сообщения " + msgid + " пользователем " + tmpl.getNick());
 
@@ -56,9 +56,12 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class TopicPrepareService {
@@ -118,6 +121,7 @@ public class TopicPrepareService {
             secure,
             user,
             msgbaseDao.getMessageText(message.getId()),
+            null,
             null
     );
   }
@@ -131,6 +135,7 @@ public class TopicPrepareService {
             secure,
             user,
             text,
+            null,
             null
     );
   }
@@ -151,7 +156,8 @@ public class TopicPrepareService {
             secure,
             null,
             new MessageText(text, true),
-            image
+            image,
+            null
     );
   }
 
@@ -163,6 +169,7 @@ public class TopicPrepareService {
    * @param poll опрос к топику
    * @param secure является ли соединение https
    * @param user пользователь
+   * @param remarks заранее загруженные комментарии пользователя об авторах, null - загрузить отдельным запросом
    * @return подготовленный топик
    */
   private PreparedTopic prepareMessage(
@@ -173,7 +180,8 @@ public class TopicPrepareService {
           boolean secure, 
           User user,
           MessageText text,
-          @Nullable Image image) {
+          @Nullable Image image,
+          @Nullable Map<Integer, Remark> remarks) {
     try {
       Group group = groupDao.getGroup(message.getGroupId());
       User author = userDao.getUserCached(message.getUid());
@@ -262,7 +270,11 @@ public class TopicPrepareService {
       }
       Remark remark = null;
       if (user != null ){
-        remark = userDao.getRemark(user, author);
+        if (remarks != null) {
+          remark = remarks.get(author.getId());
+        } else {
+          remark = userDao.getRemark(user, author);
+        }
       }
 
       int postscore = topicPermissionService.getPostscore(group, message);
@@ -338,6 +350,20 @@ public class TopicPrepareService {
     Map<Integer,MessageText> textMap = loadTexts(messages);
     ImmutableListMultimap<Integer,TagRef> tags = topicTagService.getTagRefs(messages);
 
+    Map<Integer, Remark> remarks;
+
+    if (user != null) {
+      Set<Integer> authors = new HashSet<>(messages.size());
+
+      for (Topic message : messages) {
+        authors.add(message.getUid());
+      }
+
+      remarks = userDao.getRemarks(user, authors);
+    } else {
+      remarks = null;
+    }
+
     for (Topic message : messages) {
 
       PreparedTopic preparedMessage = prepareMessage(
@@ -348,7 +374,8 @@ public class TopicPrepareService {
               secure,
               user,
               textMap.get(message.getId()),
-              null
+              null,
+              remarks
       );
 
       TopicMenu topicMenu = getTopicMenu(
@@ -400,6 +427,7 @@ public class TopicPrepareService {
               secure,
               null,
               textMap.get(message.getId()),
+              null,
               null
       );
 
@@ -409,6 +437,50 @@ public class TopicPrepareService {
     return pm;
   }
 
+  /**
+   * Персонализация ленты, подготовленной prepareMessages: комментарии пользователя
+   * об авторах и меню топиков. Используется для общей ленты главной страницы
+   * @param prepared топики, подготовленные без пользователя
+   * @param secure является ли соединение https
+   * @param user пользователь
+   * @param profile профиль пользователя
+   * @return список подготовленных топиков
+   */
+  public List<PersonalizedPreparedTopic> personalizeMessages(
+          List<PreparedTopic> prepared,
+          boolean secure,
+          @Nullable User user,
+          Profile profile
+  ) {
+    Map<Integer, Remark> remarks;
+
+    if (user != null) {
+      Set<Integer> authors = new HashSet<>(prepared.size());
+
+      for (PreparedTopic message : prepared) {
+        authors.add(message.getAuthor().getId());
+      }
+
+      remarks = userDao.getRemarks(user, authors);
+    } else {
+      remarks = Collections.emptyMap();
+    }
+
+    List<PersonalizedPreparedTopic> pm = new ArrayList<>(prepared.size());
+
+    for (PreparedTopic message : prepared) {
+      Remark remark = remarks.get(message.getAuthor().getId());
+      PreparedTopic personalized = remark != null ? message.withRemark(remark) : message;
+
+      pm.add(new PersonalizedPreparedTopic(
+              personalized,
+              getTopicMenu(personalized, user, secure, profile, false)
+      ));
+    }
+
+    return pm;
+  }
+
   @Nonnull
   public TopicMenu getTopicMenu(
           @Nonnull PreparedTopic message,
@@ -27,6 +27,7 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.org.linux.gallery.ImageDao;
 import ru.org.linux.gallery.Screenshot;
 import ru.org.linux.group.Group;
+import ru.org.linux.pagecache.PageCache;
 import ru.org.linux.poll.PollDao;
 import ru.org.linux.poll.PollNotFoundException;
 import ru.org.linux.poll.PollVariant;
@@ -88,6 +89,9 @@ public class TopicService {
   @Autowired
   private LorCodeService lorCodeService;
 
+  @Autowired
+  private PageCache pageCache;
+
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public int addMessage(
           HttpServletRequest request,
@@ -106,6 +110,8 @@ public class TopicService {
             group
     );
 
+    pageCache.groupChanged(group.getId());
+
     Section section = sectionService.getSection(group.getSectionId());
 
     if (section.isImagepost() && scrn == null) {
@@ -204,6 +210,7 @@ public class TopicService {
     boolean deleted = topicDao.delete(mid);
 
     if (deleted) {
+      pageCache.topicChanged(mid);
       deleteInfoDao.insert(mid, moderator, reason, bonus);
       userEventService.processTopicDeleted(ImmutableList.of(mid));
     }
@@ -240,6 +247,7 @@ public class TopicService {
       boolean deleted = topicDao.delete(mid);
 
       if (deleted) {
+        pageCache.topicChanged(mid);
         deleteInfoDao.insert(mid, moderator, reason, 0);
         deletedTopics.add(mid);
       }
@@ -293,12 +301,15 @@ public class TopicService {
 
     if (oldMsg.isDraft() && !newMsg.isDraft()) {
       topicDao.publish(newMsg);
+      pageCache.groupChanged(newMsg.getGroupId());
     }
 
     if (commit) {
       if (changeGroupId != null) {
         if (oldMsg.getGroupId() != changeGroupId) {
           topicDao.changeGroup(oldMsg, changeGroupId);
+          pageCache.groupChanged(oldMsg.getGroupId());
+          pageCache.groupChanged(changeGroupId);
         }
       }
 
@@ -306,6 +317,7 @@ public class TopicService {
     }
 
     if (modified) {
+      pageCache.groupChanged(newMsg.getGroupId());
       logger.info("сообщение " + oldMsg.getId() + " исправлено " + user.getNick());
     }
 
@@ -322,6 +334,7 @@ public class TopicService {
     }
 
     topicDao.commit(msg, commiter);
+    pageCache.groupChanged(msg.getGroupId());
 
     userDao.changeScore(msg.getUid(), bonus);
 
@@ -92,8 +92,10 @@ public class UserTopicListController {
           TopicListRequest topicListForm,
           @PathVariable String nick,
           HttpServletResponse response,
-          @RequestParam(value = "offset", defaultValue = "0") int offset
+          @RequestParam(value = TopicListCursor.PARAMETER, required = false) String cursorParam
   ) throws Exception {
+    TopicListCursor cursor = TopicListCursor.parse(cursorParam);
+
     Template tmpl = Template.getTemplate(request);
 
     TopicListController.setExpireHeaders(response, topicListForm.getYear(), topicListForm.getMonth());
@@ -114,12 +116,10 @@ public class UserTopicListController {
     modelAndView.addObject("ptitle", "Черновики " + user.getNick());
     modelAndView.addObject("navtitle", "Черновики " + user.getNick());
 
-    offset = topicListService.fixOffset(offset);
-    modelAndView.addObject("offset", offset);
-
     modelAndView.addObject("topicListForm", topicListForm);
 
-    List<Topic> messages = topicListService.getDrafts(user, offset);
+    List<Topic> messages = topicListService.getDrafts(user, cursor);
+    addCursorNavigation(modelAndView, cursor, messages);
     boolean rss = topicListForm.getOutput() != null && "rss".equals(topicListForm.getOutput());
 
     prepareTopicsForPlainOrRss(request, modelAndView, rss, messages);
@@ -134,10 +134,12 @@ public class UserTopicListController {
     HttpServletRequest request,
     @PathVariable String nick,
     HttpServletResponse response,
-    @RequestParam(value = "offset", defaultValue = "0") int offset,
+    @RequestParam(value = TopicListCursor.PARAMETER, required = false) String cursorParam,
     @RequestParam(value = "section", defaultValue = "0") int sectionId,
     @RequestParam(value = "output", required = false) String output
   ) throws Exception {
+    TopicListCursor cursor = TopicListCursor.parse(cursorParam);
+
     TopicListController.setExpireHeaders(response, null, null);
 
     ModelAndView modelAndView = new ModelAndView();
@@ -168,18 +170,8 @@ public class UserTopicListController {
     modelAndView.addObject("rssLink",
         UriComponentsBuilder.fromUriString("/people/{nick}/?output=rss").buildAndExpand(nick).encode().toUriString());
 
-    offset = topicListService.fixOffset(offset);
-
-    modelAndView.addObject("offset", offset);
-
-    List<Topic> messages = topicListService.getUserTopicsFeed(
-      user,
-      section,
-      null,
-      offset,
-      false,
-      false
-    );
+    List<Topic> messages = topicListService.getUserTopicsFeed(user, section, cursor);
+    addCursorNavigation(modelAndView, cursor, messages);
 
     boolean rss = "rss".equals(output);
     if (!rss) {
@@ -236,6 +228,12 @@ public class UserTopicListController {
     return modelAndView;
   }
 
+  private void addCursorNavigation(ModelAndView modelAndView, TopicListCursor cursor, List<Topic> messages) {
+    modelAndView.addObject("cursorNavigation", true);
+    modelAndView.addObject("firstPage", cursor == null);
+    modelAndView.addObject("nextCursor", topicListService.getUserTopicsNextCursor(messages));
+  }
+
   private void prepareTopicsForPlainOrRss(
     HttpServletRequest request,
     ModelAndView modelAndView,
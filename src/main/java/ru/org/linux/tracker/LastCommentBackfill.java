@@ -0,0 +1,149 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tracker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Заполнение указателя на последний комментарий (topics.last_comment_*)
+ * для старых топиков. Новые комментарии и удаления поддерживают указатель
+ * сами (см. CommentDao), поэтому обрабатываются только топики,
+ * у которых указатель еще не заполнен.
+ *
+ * Топики обходятся диапазонами id от новых к старым, по одному диапазону
+ * за запуск, чтобы не держать долгих блокировок. Обход начинается с последнего
+ * топика, которому нужен указатель, поэтому после перезапуска уже заполненные
+ * диапазоны не обходятся повторно, а если заполнять нечего, обход сразу завершен.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=LastCommentBackfill")
+public class LastCommentBackfill {
+  private static final Logger logger = LoggerFactory.getLogger(LastCommentBackfill.class);
+
+  private static final int MINUTE = 60 * 1000;
+  private static final int FIVE_MINS = 5 * 60 * 1000;
+
+  private static final int BATCH_SIZE = 20000;
+
+  private static final String updateRange =
+          "UPDATE topics SET last_comment_id=c.id, last_comment_by=c.userid, last_comment_date=c.postdate " +
+                  "FROM (SELECT DISTINCT ON (topic) topic, id, userid, postdate FROM comments " +
+                  "WHERE NOT deleted AND topic IN " +
+                  "(SELECT id FROM topics WHERE id>? AND id<=? AND last_comment_id IS NULL) " +
+                  "ORDER BY topic, postdate DESC, id DESC) c " +
+                  "WHERE topics.id=c.topic AND topics.last_comment_id IS NULL";
+
+  // у топиков без комментариев указатель пустой всегда
+  private static final String queryLastUnfilled =
+          "SELECT t.id FROM topics t WHERE t.last_comment_id IS NULL " +
+                  "AND EXISTS (SELECT 1 FROM comments WHERE topic=t.id AND NOT deleted) " +
+                  "ORDER BY t.id DESC LIMIT 1";
+
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * Верхняя граница еще не обработанного диапазона id; -1 - обход не начат
+   */
+  private final AtomicInteger position = new AtomicInteger(-1);
+
+  private final AtomicLong updated = new AtomicLong();
+
+  @Autowired
+  public void setDataSource(DataSource dataSource) {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  @Scheduled(fixedDelay = MINUTE, initialDelay = FIVE_MINS)
+  public synchronized void backfillStep() {
+    if (position.get() == 0) {
+      return;
+    }
+
+    if (position.get() < 0) {
+      List<Integer> last = jdbcTemplate.queryForList(queryLastUnfilled, Integer.class);
+
+      if (last.isEmpty()) {
+        position.set(0);
+        logger.info("Last comment backfill: nothing to update");
+        return;
+      }
+
+      position.set(last.get(0));
+      logger.info("Last comment backfill started from topic " + position.get());
+    }
+
+    int to = position.get();
+    int from = Math.max(0, to - BATCH_SIZE);
+
+    int count = jdbcTemplate.update(updateRange, from, to);
+
+    updated.addAndGet(count);
+    position.set(from);
+
+    if (from == 0) {
+      logger.info("Last comment backfill finished, updated " + updated.get() + " topics");
+    } else {
+      logger.debug("Last comment backfill: updated " + count + " topics in (" + from + ", " + to + "], " + from + " left");
+    }
+  }
+
+  /**
+   * Обработать все оставшиеся диапазоны сразу
+   */
+  @ManagedOperation
+  public synchronized void backfillAll() {
+    do {
+      backfillStep();
+    } while (position.get() != 0);
+  }
+
+  /**
+   * Начать обход заново со следующего запуска
+   */
+  @ManagedOperation
+  public void restart() {
+    position.set(-1);
+    updated.set(0);
+  }
+
+  @ManagedAttribute
+  public int getPosition() {
+    return position.get();
+  }
+
+  @ManagedAttribute
+  public long getUpdatedCount() {
+    return updated.get();
+  }
+
+  @ManagedAttribute
+  public boolean isFinished() {
+    return position.get() == 0;
+  }
+}
@@ -29,6 +29,7 @@ import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.view.RedirectView;
 import ru.org.linux.site.Template;
 import ru.org.linux.spring.dao.DeleteInfoDao;
+import ru.org.linux.topic.TopicListCursor;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserDao;
 import ru.org.linux.user.UserErrorException;
@@ -96,16 +97,10 @@ public class TrackerController {
   @RequestMapping("/tracker")
   public ModelAndView tracker(
       @RequestParam(value="filter", required = false) String filterAction,
-      @RequestParam(value="offset", required = false) Integer offset,
+      @RequestParam(value=TopicListCursor.PARAMETER, required = false) String cursorParam,
       HttpServletRequest request
   ) throws Exception {
-    if (offset==null) {
-      offset = 0;
-    } else {
-      if (offset<0 || offset>300) {
-        throw new UserErrorException("Некорректное значение offset");
-      }
-    }
+    TopicListCursor cursor = TopicListCursor.parse(cursorParam);
 
     Template tmpl = Template.getTemplate(request);
 
@@ -114,7 +109,7 @@ public class TrackerController {
     TrackerFilterEnum trackerFilter = TrackerFilterEnum.getByValue(filterAction).or(defaultFilter);
 
     Map<String, Object> params = new HashMap<>();
-    params.put("offset", offset);
+    params.put("firstPage", cursor == null);
     params.put("filter", trackerFilter.getValue());
 
     if (trackerFilter != defaultFilter) {
@@ -146,7 +141,15 @@ public class TrackerController {
       throw new UserErrorException("Not authorized");
     }
 
-    params.put("msgs", trackerDao.getTrackAll(trackerFilter, user, startDate, topics, offset, messages));
+    List<TrackerItem> msgs = trackerDao.getTrackAll(trackerFilter, user, startDate, topics, cursor, messages);
+
+    params.put("msgs", msgs);
+
+    if (msgs.size() == topics) {
+      TrackerItem last = msgs.get(msgs.size() - 1);
+
+      params.put("nextCursor", TopicListCursor.of(last.getLastmod(), last.getMsgid()));
+    }
 
     if (tmpl.isModeratorSession() && trackerFilter != TrackerFilterEnum.MINE) {
       params.put("newUsers", userDao.getNewUsers());
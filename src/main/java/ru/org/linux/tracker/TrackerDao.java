@@ -15,24 +15,23 @@
 
 package ru.org.linux.tracker;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
 import ru.org.linux.topic.Topic;
+import ru.org.linux.topic.TopicListCursor;
 import ru.org.linux.topic.TopicTagService;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserDao;
-import ru.org.linux.user.UserNotFoundException;
 import ru.org.linux.util.StringUtil;
 
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import java.sql.Timestamp;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 
 @Repository
 public class TrackerDao {
@@ -68,8 +67,9 @@ public class TrackerDao {
           "FROM topics AS t, groups AS g, sections " +
           "WHERE sections.id=g.section AND not t.deleted AND not t.draft AND t.postdate > :interval " +
           "%s" + /* user!=null ? queryPartIgnored*/
+          "%s" + /* cursor!=null ? queryPartCursor */
           " AND t.stat1=0 AND g.id=t.groupid " +
-          "ORDER BY lastmod DESC LIMIT :topics OFFSET :offset";
+          "ORDER BY lastmod DESC, t.id DESC LIMIT :topics";
 
   private static final String queryTrackerMain =
       "SELECT " +
@@ -79,21 +79,22 @@ public class TrackerDao {
         "g.id AS gid, " +
         "g.title AS gtitle, " +
         "t.title AS title, " +
-        "comments.id as cid, " +
-        "comments.userid AS last_comment_by, " +
+        "t.last_comment_id as cid, " +
+        "t.last_comment_by AS last_comment_by, " +
         "t.resolved as resolved," +
         "section," +
         "urlname," +
-        "comments.postdate, " +
+        "t.last_comment_date AS postdate, " +
         "sections.moderate as smod, " +
         "t.moderate " +
-      "FROM topics AS t, groups AS g, comments, sections " +
-      "WHERE g.section=sections.id AND not t.deleted AND not t.draft AND t.id=comments.topic AND t.groupid=g.id " +
-        "AND comments.id=(SELECT id FROM comments WHERE NOT deleted AND comments.topic=t.id ORDER BY postdate DESC LIMIT 1) " +
+      "FROM topics AS t, groups AS g, sections " +
+      "WHERE g.section=sections.id AND not t.deleted AND not t.draft AND t.groupid=g.id " +
+        "AND t.last_comment_id IS NOT NULL " +
         "AND t.lastmod > :interval " +
         "%s" + /* noUncommited */
         "%s" + /* user!=null ? queryPartIgnored*/
         "%s" + /* noTalks ? queryPartNoTalks tech ? queryPartTech mine ? queryPartMine*/
+        "%s" + /* cursor!=null ? queryPartCursor */
      "UNION ALL " +
       "SELECT " +
           "t.userid as author, " +
@@ -115,14 +116,21 @@ public class TrackerDao {
           "%s" + /* noUncommited */
           "%s" + /* user!=null ? queryPartIgnored*/
           "%s" + /* noTalks ? queryPartNoTalks tech ? queryPartTech mine ? queryPartMine*/
+          "%s" + /* cursor!=null ? queryPartCursor */
           " AND t.stat1=0 AND g.id=t.groupid " +
       "%s" + /* wikiPart */
-     "ORDER BY lastmod DESC LIMIT :topics OFFSET :offset";
+     "ORDER BY lastmod DESC, id DESC LIMIT :topics";
+
+  /**
+   * Ключ изменения вики для сортировки и курсора: отрицательный, чтобы
+   * не совпадать с id топиков
+   */
+  private static final String WIKI_ID = "-COALESCE(topic_version_id, 0)";
 
   private static final String queryPartWiki = "UNION ALL " +
       "SELECT " + // wiki
           "0 as author, " +
-          "0 as id, change_date as lastmod, " +
+          WIKI_ID + " as id, change_date as lastmod, " +
           "characters_changed as stat1, " +
           "0 as gid, " +
           "'Wiki' as gtitle, " +
@@ -141,7 +149,7 @@ public class TrackerDao {
   private static final String queryPartWikiMine =      "UNION ALL " +
       "SELECT " + // wiki
           "0 as author, " +
-          "0 as id, change_date as lastmod, " +
+          WIKI_ID + " as id, change_date as lastmod, " +
           "characters_changed as stat1, " +
           "0 as gid, " +
           "'Wiki' as gtitle, " +
@@ -170,13 +178,33 @@ public class TrackerDao {
 
   private static final String noUncommited = " AND (t.moderate or NOT sections.moderate) ";
 
+  private static final String queryPartCursor = " AND (t.lastmod, t.id) < (:cursorTime, :cursorId) ";
+  private static final String queryPartWikiCursor = " AND (change_date, " + WIKI_ID + ") < (:cursorTime, :cursorId) ";
+
+  /**
+   * Выборка страницы трекера, отсортированной по убыванию (lastmod, id)
+   *
+   * @param cursor позиция, после которой выбирать, или null для первой страницы
+   */
   public List<TrackerItem> getTrackAll(TrackerFilterEnum filter, User currentUser, Date startDate,
-                                       int topics, int offset, final int messagesInPage) {
+                                       int topics, @Nullable TopicListCursor cursor, final int messagesInPage) {
 
     MapSqlParameterSource parameter = new MapSqlParameterSource();
     parameter.addValue("interval", startDate);
     parameter.addValue("topics", topics);
-    parameter.addValue("offset", offset);
+
+    String partCursor;
+    String partWikiCursor;
+
+    if (cursor != null) {
+      partCursor = queryPartCursor;
+      partWikiCursor = queryPartWikiCursor;
+      parameter.addValue("cursorTime", cursor.getTime());
+      parameter.addValue("cursorId", cursor.getId());
+    } else {
+      partCursor = "";
+      partWikiCursor = "";
+    }
 
     String partIgnored;
 
@@ -221,23 +249,46 @@ public class TrackerDao {
     String query;
 
     if(filter != TrackerFilterEnum.ZERO) {
-      query = String.format(queryTrackerMain, partUncommited, partIgnored, partFilter, partUncommited, partIgnored, partFilter, partWiki);
+      query = String.format(queryTrackerMain,
+              partUncommited, partIgnored, partFilter, partCursor,
+              partUncommited, partIgnored, partFilter, partCursor,
+              partWiki + partWikiCursor);
     } else {
-      query = String.format(queryTrackerZeroMain, partIgnored);
+      query = String.format(queryTrackerZeroMain, partIgnored, partCursor);
     }
 
     SqlRowSet resultSet = jdbcTemplate.queryForRowSet(query, parameter);
 
+    Set<Integer> userIds = new HashSet<>();
+    List<Integer> topicIds = new ArrayList<>(topics);
+
+    while (resultSet.next()) {
+      int authorId = resultSet.getInt("author");
+      if (authorId != 0) {
+        userIds.add(authorId);
+      }
+
+      int lastCommentById = resultSet.getInt("last_comment_by");
+      if (lastCommentById != 0) {
+        userIds.add(lastCommentById);
+      }
+
+      int msgid = resultSet.getInt("id");
+      if (msgid > 0) {
+        topicIds.add(msgid);
+      }
+    }
+
+    Map<Integer, User> users = userDao.getUsersCachedMap(userIds);
+    ImmutableListMultimap<Integer, String> tags = topicTagService.getTagsForTitle(topicIds);
+
+    resultSet.beforeFirst();
+
     List<TrackerItem> res = new ArrayList<>(topics);
     
     while (resultSet.next()) {
-      User author;
       int author_id = resultSet.getInt("author");
-      if (author_id != 0) {
-        author = userDao.getUserCached(author_id);
-      } else {
-        author = null;
-      }
+      User author = author_id != 0 ? users.get(author_id) : null;
       int msgid = resultSet.getInt("id");
       Timestamp lastmod = resultSet.getTimestamp("lastmod");
       int stat1 = resultSet.getInt("stat1");
@@ -245,18 +296,8 @@ public class TrackerDao {
       String groupTitle = resultSet.getString("gtitle");
       String title = StringUtil.makeTitle(resultSet.getString("title"));
       int cid = resultSet.getInt("cid");
-      User lastCommentBy;
-      try {
-        int id = resultSet.getInt("last_comment_by");
-
-        if (id != 0) {
-          lastCommentBy = userDao.getUserCached(id);
-        } else {
-          lastCommentBy = null;
-        }
-      } catch (UserNotFoundException e) {
-        throw new RuntimeException(e);
-      }
+      int lastCommentById = resultSet.getInt("last_comment_by");
+      User lastCommentBy = lastCommentById != 0 ? users.get(lastCommentById) : null;
       boolean resolved = resultSet.getBoolean("resolved");
       int section = resultSet.getInt("section");
       String groupUrlName = resultSet.getString("urlname");
@@ -264,17 +305,9 @@ public class TrackerDao {
       boolean uncommited = resultSet.getBoolean("smod") && !resultSet.getBoolean("moderate");
       int pages = Topic.getPageCount(stat1, messagesInPage);
 
-      ImmutableList<String> tags;
-
-      if (msgid != 0) {
-        tags = topicTagService.getTagsForTitle(msgid);
-      } else {
-        tags = ImmutableList.of();
-      }
-
       res.add(new TrackerItem(author, msgid, lastmod, stat1,
               groupId, groupTitle, title, cid, lastCommentBy, resolved,
-              section, groupUrlName, postdate, uncommited, pages, tags));
+              section, groupUrlName, postdate, uncommited, pages, tags.get(msgid)));
     }
     
     return res;
@@ -19,13 +19,20 @@ import org.jasypt.util.password.BasicPasswordEncryptor;
 import org.jasypt.util.password.PasswordEncryptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -43,22 +50,32 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Repository
 public class UserDao {
   private static final Logger logger = LoggerFactory.getLogger(UserDao.class);
 
+  private static final String USERS_CACHE = "Users";
+
   private JdbcTemplate jdbcTemplate;
+  private NamedParameterJdbcTemplate namedJdbcTemplate;
 
   @Autowired
   private UserLogDao userLogDao;
 
+  @Autowired(required = false)
+  private CacheManager cacheManager;
+
   /**
    * изменение score пользователю
    */
   private static final String queryChangeScore = "UPDATE users SET score=score+? WHERE id=?";
   private static final String queryUserById = "SELECT id,nick,score,max_score,candel,canmod,corrector,passwd,blocked,activated,photo,email,name,unread_events,style FROM users where id=?";
+  private static final String queryUsersByIds = "SELECT id,nick,score,max_score,candel,canmod,corrector,passwd,blocked,activated,photo,email,name,unread_events,style FROM users where id IN (:list)";
   private static final String queryUserIdByNick = "SELECT id FROM users where nick=?";
+  private static final String queryUsersByNicks = "SELECT id,nick,score,max_score,candel,canmod,corrector,passwd,blocked,activated,photo,email,name,unread_events,style FROM users where nick IN (:list)";
   private static final String updateUserStyle = "UPDATE users SET style=? WHERE id=?";
 
   private static final String queryNewUsers = "SELECT id FROM users where " +
@@ -82,6 +99,7 @@ public class UserDao {
   @Autowired
   public void setJdbcTemplate(DataSource dataSource) {
     jdbcTemplate = new JdbcTemplate(dataSource);
+    namedJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
   }
 
   public User getUser(String nick) throws UserNotFoundException {
@@ -425,18 +443,121 @@ public class UserDao {
     ));
   }
 
-  // TODO кеш тут не работает, так как аннотации оборачивают
-  // TODO только внешние вызовы. Надо что-то с этим сделать.
   public List<User> getUsersCached(Collection<Integer> ids) {
+    Map<Integer, User> map = getUsersCachedMap(ids);
+
     List<User> users = new ArrayList<>(ids.size());
 
     for (int id : ids) {
-      users.add(getUserCached(id));
+      users.add(map.get(id));
     }
 
     return users;
   }
 
+  /**
+   * Загружает список пользователей. Пользователи, отсутствующие в кеше,
+   * загружаются одним запросом и помещаются в кеш.
+   *
+   * @param ids идентификаторы пользователей
+   * @return пользователи, ключ - идентификатор пользователя
+   * @throws UserNotFoundException если какой-то из пользователей не найден
+   */
+  @Nonnull
+  public Map<Integer, User> getUsersCachedMap(Collection<Integer> ids) throws UserNotFoundException {
+    if (ids.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    Set<Integer> unique = ImmutableSet.copyOf(ids);
+
+    final Map<Integer, User> users = Maps.newHashMapWithExpectedSize(unique.size());
+    final Cache cache = cacheManager!=null ? cacheManager.getCache(USERS_CACHE) : null;
+
+    List<Integer> missing = new ArrayList<>();
+
+    for (Integer id : unique) {
+      Cache.ValueWrapper cached = cache!=null ? cache.get(id) : null;
+
+      if (cached!=null) {
+        users.put(id, (User) cached.get());
+      } else {
+        missing.add(id);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      namedJdbcTemplate.query(
+              queryUsersByIds,
+              ImmutableMap.of("list", missing),
+              new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                  User user = new User(rs);
+
+                  users.put(user.getId(), user);
+
+                  if (cache!=null) {
+                    cache.put(user.getId(), user);
+                  }
+                }
+              }
+      );
+
+      for (Integer id : missing) {
+        if (!users.containsKey(id)) {
+          throw new UserNotFoundException(id);
+        }
+      }
+    }
+
+    return users;
+  }
+
+  /**
+   * Загружает пользователей по списку nick одним запросом, загруженные
+   * пользователи помещаются в кеш. Некорректные и несуществующие nick пропускаются.
+   *
+   * @param nicks список nick
+   * @return пользователи, ключ - nick пользователя
+   */
+  @Nonnull
+  public Map<String, User> getUsersByNicks(Collection<String> nicks) {
+    List<String> valid = new ArrayList<>(nicks.size());
+
+    for (String nick : ImmutableSet.copyOf(nicks)) {
+      if (StringUtil.checkLoginName(nick)) {
+        valid.add(nick);
+      }
+    }
+
+    if (valid.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    final Map<String, User> users = Maps.newHashMapWithExpectedSize(valid.size());
+    final Cache cache = cacheManager!=null ? cacheManager.getCache(USERS_CACHE) : null;
+
+    namedJdbcTemplate.query(
+            queryUsersByNicks,
+            ImmutableMap.of("list", valid),
+            new RowCallbackHandler() {
+              @Override
+              public void processRow(ResultSet rs) throws SQLException {
+                User user = new User(rs);
+
+                users.put(user.getNick(), user);
+
+                if (cache!=null) {
+                  cache.put(user.getId(), user);
+                }
+              }
+            }
+    );
+
+    return users;
+  }
+
   public User getByEmail(String email, boolean searchBlocked) {
     try {
       int id;
@@ -585,6 +706,36 @@ public class UserDao {
     }
   }
 
+  /**
+   * Получить комментарии пользователя user о списке пользователей одним запросом
+   * @param user logged user
+   * @param refIds id пользователей, для которых нужны комментарии
+   * @return комментарии, ключ - id пользователя, о котором комментарий
+   */
+  @Nonnull
+  public Map<Integer, Remark> getRemarks(User user, Collection<Integer> refIds) {
+    if (refIds.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    final Map<Integer, Remark> remarks = Maps.newHashMapWithExpectedSize(refIds.size());
+
+    namedJdbcTemplate.query(
+            "SELECT * FROM user_remarks WHERE user_id=:user AND ref_user_id IN (:list)",
+            ImmutableMap.of("user", user.getId(), "list", refIds),
+            new RowCallbackHandler() {
+              @Override
+              public void processRow(ResultSet resultSet) throws SQLException {
+                Remark remark = new Remark(resultSet);
+
+                remarks.put(remark.getRefUserId(), remark);
+              }
+            }
+    );
+
+    return remarks;
+  }
+
   public int getRemarkCount(User user) {
     return jdbcTemplate.queryForObject(
             "SELECT count(*) as c FROM user_remarks WHERE user_id=?",
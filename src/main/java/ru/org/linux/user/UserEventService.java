@@ -15,6 +15,7 @@
 
 package ru.org.linux.user;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,10 +31,7 @@ import ru.org.linux.spring.dao.MessageText;
 import ru.org.linux.spring.dao.MsgbaseDao;
 import ru.org.linux.util.bbcode.LorCodeService;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static ru.org.linux.user.UserEventFilterEnum.*;
 
@@ -67,18 +65,36 @@ public class UserEventService {
    * @return
    */
   public List<PreparedUserEvent> prepare(List<UserEvent> events, boolean readMessage, boolean secure) {
+    List<Integer> msgids = new ArrayList<>(events.size());
+    List<Integer> deletedIds = new ArrayList<>();
+    Set<Integer> userIds = new HashSet<>();
+
+    for (UserEvent event : events) {
+      int msgid = event.isComment() ? event.getCid() : event.getMsgid();
+
+      msgids.add(msgid);
+
+      if ("DEL".equals(event.getType().getType())) {
+        deletedIds.add(msgid);
+      }
+
+      if (event.isComment()) {
+        userIds.add(event.getCommentAuthor());
+      }
+    }
+
+    Map<Integer, MessageText> texts = readMessage ? msgbaseDao.getMessageText(msgids) : ImmutableMap.<Integer, MessageText>of();
+    Map<Integer, DeleteInfo> deleteInfos = deleteInfoDao.getDeleteInfo(deletedIds);
+    Map<Integer, User> users = userDao.getUsersCachedMap(userIds);
+
     List<PreparedUserEvent> prepared = new ArrayList<>(events.size());
 
     for (UserEvent event : events) {
+      int msgid = event.isComment() ? event.getCid() : event.getMsgid();
+
       String text;
       if (readMessage) {
-        MessageText messageText;
-
-        if (event.isComment()) {
-          messageText = msgbaseDao.getMessageText(event.getCid());
-        } else { // Топик
-          messageText = msgbaseDao.getMessageText(event.getMsgid());
-        }
+        MessageText messageText = texts.get(msgid);
 
         text = lorCodeService.prepareTextRSS(messageText.getText(), secure, messageText.isLorcode());
       } else {
@@ -88,24 +104,17 @@ public class UserEventService {
       User commentAuthor;
       int bonus = 0;
 
-      if (event.isComment()) {
-        if("DEL".equals(event.getType().getType())) {
-          DeleteInfo deleteInfo = deleteInfoDao.getDeleteInfo(event.getCid());
-          if(deleteInfo != null) {
-            bonus = deleteInfo.getBonus();
-          }
+      if("DEL".equals(event.getType().getType())) {
+        DeleteInfo deleteInfo = deleteInfos.get(msgid);
+        if(deleteInfo != null) {
+          bonus = deleteInfo.getBonus();
         }
+      }
 
-        commentAuthor = userDao.getUserCached(event.getCommentAuthor());
+      if (event.isComment()) {
+        commentAuthor = users.get(event.getCommentAuthor());
       } else {
         commentAuthor = null;
-        if("DEL".equals(event.getType().getType())) {
-
-          DeleteInfo deleteInfo = deleteInfoDao.getDeleteInfo(event.getMsgid());
-          if(deleteInfo != null) {
-            bonus = deleteInfo.getBonus();
-          }
-        }
       }
 
       Group group = groupDao.getGroup(event.getGroupId());
@@ -276,8 +276,20 @@ public class LorURL extends URI {
     if(_topic_id != -1) {
       Topic message = messageDao.getById(_topic_id);
 
-      Group group = messageDao.getGroup(message);
+      return formatJump(messageDao.getGroup(message), secure);
+    }
+    return "";
+  }
 
+  /**
+   * Ссылка для перехода на топик, если группа топика уже загружена
+   *
+   * @param group группа топика
+   * @param secure признак того какой надо url: https или http
+   * @return url или пустая строка, если это не ссылка на топик
+   */
+  public String formatJump(Group group, boolean secure) throws URIException {
+    if(_topic_id != -1) {
       String scheme;
       if(secure) {
         scheme = "https";
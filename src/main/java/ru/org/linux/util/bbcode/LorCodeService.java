@@ -16,12 +16,15 @@
 
 package ru.org.linux.util.bbcode;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.httpclient.URI;
 import org.jsoup.Jsoup;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.org.linux.spring.SiteConfig;
 import ru.org.linux.spring.dao.MessageText;
+import ru.org.linux.spring.dao.PlainTextCache;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserDao;
 import ru.org.linux.util.LorURL;
@@ -30,6 +33,7 @@ import ru.org.linux.util.bbcode.nodes.RootNode;
 import ru.org.linux.util.formatter.ToHtmlFormatter;
 
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class LorCodeService {
@@ -38,6 +42,17 @@ public class LorCodeService {
   private UserDao userDao;
   private SiteConfig siteConfig;
   private ToHtmlFormatter toHtmlFormatter;
+  private PlainTextCache plainTextCache;
+
+  /**
+   * Пользователи, упомянутые через тег [user], ключ - nick.
+   * Время жизни небольшое, чтобы блокировка пользователя быстро отражалась в текстах
+   */
+  private final Cache<String, User> usersCache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(10000)
+                  .expireAfterWrite(1, TimeUnit.MINUTES)
+                  .build();
 
   @Autowired
   public void setUserDao(UserDao userDao) {
@@ -54,6 +69,11 @@ public class LorCodeService {
     this.toHtmlFormatter = toHtmlFormatter;
   }
 
+  @Autowired
+  public void setPlainTextCache(PlainTextCache plainTextCache) {
+    this.plainTextCache = plainTextCache;
+  }
+
   /**
    * Преобразует LORCODE в HTML для комментариев
    * тэги [cut] не отображаются никак
@@ -64,11 +84,11 @@ public class LorCodeService {
    * @return HTML
    */
   public String parseComment(String text, boolean secure, boolean nofollow) {
-    return defaultParser.parseRoot(prepareCommentRootNode(secure, false, nofollow), text).renderXHtml();
+    return renderXHtml(defaultParser.parseRoot(prepareCommentRootNode(secure, false, nofollow), text));
   }
 
   public String parseCommentRSS(String text, boolean secure) {
-    return defaultParser.parseRoot(prepareCommentRootNode(secure, true, false), text).renderXHtml();
+    return renderXHtml(defaultParser.parseRoot(prepareCommentRootNode(secure, true, false), text));
   }
 
   /**
@@ -114,6 +134,24 @@ public class LorCodeService {
     }
   }
 
+  /**
+   * Получить чистый текст сообщения через кеш
+   *
+   * @param msgid id сообщения
+   * @param text текст сообщения
+   * @return извлеченный текст
+   */
+  public String extractPlainText(int msgid, MessageText text) {
+    String plainText = plainTextCache.get(msgid, text);
+
+    if (plainText == null) {
+      plainText = extractPlainText(text);
+      plainTextCache.put(msgid, text, plainText);
+    }
+
+    return plainText;
+  }
+
   /**
    * Проверяем комментарий на отсутствие текста
    * @param msg текст
@@ -130,7 +168,7 @@ public class LorCodeService {
    */
   public Set<User> getReplierFromMessage(String text) {
     RootNode rootNode = defaultParser.parseRoot(prepareCommentRootNode(false, false, false), text);
-    rootNode.renderXHtml();
+    renderXHtml(rootNode);
     return rootNode.getReplier();
   }
   /**
@@ -142,7 +180,7 @@ public class LorCodeService {
    * @return HTML
    */
   public String parseTopicWithMinimizedCut(String text, String cutURL, boolean secure, boolean nofollow) {
-    return defaultParser.parseRoot(prepareTopicRootNode(true, cutURL, secure, nofollow), text).renderXHtml();
+    return renderXHtml(defaultParser.parseRoot(prepareTopicRootNode(true, cutURL, secure, nofollow), text));
   }
   /**
    * Преобразует LORCODE в HTML для топиков со развернутым содержимым тэга cut
@@ -153,13 +191,19 @@ public class LorCodeService {
    * @return HTML
    */
   public String parseTopic(String text, boolean secure, boolean nofollow) {
-    return defaultParser.parseRoot(prepareTopicRootNode(false, null, secure, nofollow), text).renderXHtml();
+    return renderXHtml(defaultParser.parseRoot(prepareTopicRootNode(false, null, secure, nofollow), text));
+  }
+
+  private static String renderXHtml(RootNode rootNode) {
+    rootNode.prefetchUsers();
+    return rootNode.renderXHtml();
   }
 
   private RootNode prepareCommentRootNode(boolean secure, boolean rss, boolean nofollow) {
     RootNode rootNode = defaultParser.getRootNode();
     rootNode.setCommentCutOptions();
     rootNode.setUserDao(userDao);
+    rootNode.setUsersCache(usersCache);
     rootNode.setSecure(secure);
     rootNode.setToHtmlFormatter(toHtmlFormatter);
     rootNode.setRss(rss);
@@ -186,6 +230,7 @@ public class LorCodeService {
       rootNode.setMaximizedTopicCutOptions();
     }
     rootNode.setUserDao(userDao);
+    rootNode.setUsersCache(usersCache);
     rootNode.setSecure(secure);
     rootNode.setToHtmlFormatter(toHtmlFormatter);
     rootNode.setNofollow(nofollow);
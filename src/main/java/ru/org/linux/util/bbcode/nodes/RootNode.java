@@ -53,14 +53,19 @@
 
 package ru.org.linux.util.bbcode.nodes;
 
+import com.google.common.cache.Cache;
 import org.apache.commons.httpclient.URI;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserDao;
+import ru.org.linux.user.UserNotFoundException;
+import ru.org.linux.util.bbcode.Parser;
 import ru.org.linux.util.bbcode.ParserParameters;
 import ru.org.linux.util.bbcode.ParserParameters.CutType;
 import ru.org.linux.util.formatter.ToHtmlFormatter;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -72,8 +77,13 @@ public class RootNode extends Node {
   private CutType cutType;
   private URI cutURI;
   private UserDao userDao;
+  private Cache<String, User> usersCache;
   private ToHtmlFormatter toHtmlFormatter;
   private final Set<User> replier;
+  /**
+   * Пользователи, упомянутые в разбираемом тексте: ключ - nick
+   */
+  private final Map<String, User> users = new HashMap<>();
   private boolean secure;
   private boolean rss;
   private boolean nofollow = false;
@@ -110,6 +120,88 @@ public class RootNode extends Node {
     this.userDao = userDao;
   }
 
+  /**
+   * Общий для всех разборов кеш пользователей, ключ - nick
+   */
+  public void setUsersCache(Cache<String, User> usersCache) {
+    this.usersCache = usersCache;
+  }
+
+  /**
+   * Получить пользователя по nick: сначала из найденных при этом разборе,
+   * потом из общего кеша и только потом из БД
+   *
+   * @param nick nick пользователя
+   * @return пользователь
+   * @throws UserNotFoundException если пользователь не найден
+   */
+  public User getUser(String nick) throws UserNotFoundException {
+    User user = users.get(nick);
+
+    if (user == null && usersCache != null) {
+      user = usersCache.getIfPresent(nick);
+    }
+
+    if (user == null) {
+      user = userDao.getUser(nick);
+
+      if (usersCache != null) {
+        usersCache.put(nick, user);
+      }
+    }
+
+    users.put(nick, user);
+
+    return user;
+  }
+
+  /**
+   * Загрузить одним запросом всех упомянутых в тексте пользователей,
+   * которых нет в кеше. Вызывается после разбора и до рендеринга.
+   */
+  public void prefetchUsers() {
+    if (userDao == null) {
+      return;
+    }
+
+    Set<String> nicks = new HashSet<>();
+    collectMembers(this, nicks);
+
+    Set<String> missing = new HashSet<>();
+
+    for (String nick : nicks) {
+      User cached = usersCache != null ? usersCache.getIfPresent(nick) : null;
+
+      if (cached != null) {
+        users.put(nick, cached);
+      } else {
+        missing.add(nick);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      Map<String, User> found = userDao.getUsersByNicks(missing);
+
+      users.putAll(found);
+
+      if (usersCache != null) {
+        usersCache.putAll(found);
+      }
+    }
+  }
+
+  private static void collectMembers(Node node, Set<String> nicks) {
+    for (Node child : node.getChildren()) {
+      if (child instanceof TagNode && "user".equals(((TagNode) child).getBbtag().getName())) {
+        if (child.lengthChildren() > 0 && child.getChildren().get(0) instanceof TextNode) {
+          nicks.add(Parser.escape(((TextNode) child.getChildren().get(0)).getText()).trim());
+        }
+      } else {
+        collectMembers(child, nicks);
+      }
+    }
+  }
+
 
   public boolean isSecure() {
     return secure;
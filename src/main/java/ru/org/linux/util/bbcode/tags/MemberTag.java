@@ -87,7 +87,7 @@ public class MemberTag extends Tag {
     UserDao userDao = rootNode.getUserDao();
     try {
       if(userDao != null && toHtmlFormatter != null){
-        User user = rootNode.getUserDao().getUser(memberName);
+        User user = rootNode.getUser(memberName);
         if (!user.isBlocked()) {
           result = String.format("<span style=\"white-space: nowrap\"><img src=\"/img/tuxlor.png\"><a style=\"text-decoration: none\" href=\"%s\">%s</a></span>",
               toHtmlFormatter.memberURL(user, secure), Parser.escape(memberName));
@@ -15,6 +15,8 @@
 
 package ru.org.linux.util.formatter;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.URIException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,6 +34,7 @@ import ru.org.linux.util.StringUtil;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -64,6 +67,25 @@ public class ToHtmlFormatter {
 
   private int maxLength=80;
 
+  /**
+   * Топики, на которые ссылаются тексты. Используются только для заголовка ссылки
+   * и признака удаления, поэтому небольшое время жизни допустимо
+   */
+  private final Cache<Integer, Topic> linkedTopics =
+          CacheBuilder.newBuilder()
+                  .maximumSize(10000)
+                  .expireAfterWrite(1, TimeUnit.MINUTES)
+                  .build();
+
+  /**
+   * Признак удаления комментариев, на которые ссылаются тексты
+   */
+  private final Cache<Integer, Boolean> linkedCommentsDeleted =
+          CacheBuilder.newBuilder()
+                  .maximumSize(10000)
+                  .expireAfterWrite(1, TimeUnit.MINUTES)
+                  .build();
+
   @Autowired
   public void setSiteConfig(SiteConfig siteConfig) {
     this.siteConfig = siteConfig;
@@ -238,19 +260,17 @@ public class ToHtmlFormatter {
           @Nullable String linkText
   ) throws URIException {
     try {
-      Topic message = messageDao.getById(url.getMessageId());
+      Topic message = getLinkedTopic(url.getMessageId());
 
       boolean deleted = message.isDeleted();
 
       if (!deleted && url.isCommentUrl()) {
-        Comment comment = commentService.getById(url.getCommentId());
-
-        deleted = comment.isDeleted();
+        deleted = isLinkedCommentDeleted(url.getCommentId());
       }
 
       String urlTitle = linkText!=null?simpleFormat(linkText):StringUtil.escapeHtml(message.getTitle());
 
-      String newUrlHref = url.formatJump(messageDao, secure);
+      String newUrlHref = url.formatJump(messageDao.getGroup(message), secure);
       String fixedUrlBody = url.formatUrlBody(maxLength);
 
       if (deleted) {
@@ -266,4 +286,28 @@ public class ToHtmlFormatter {
       out.append("<a href=\"").append(url.toString()).append("\">").append(url.formatUrlBody(maxLength)).append("</a>");
     }
   }
+
+  private Topic getLinkedTopic(int msgid) throws MessageNotFoundException {
+    Topic topic = linkedTopics.getIfPresent(msgid);
+
+    if (topic == null) {
+      topic = messageDao.getById(msgid);
+      linkedTopics.put(msgid, topic);
+    }
+
+    return topic;
+  }
+
+  private boolean isLinkedCommentDeleted(int msgid) throws MessageNotFoundException {
+    Boolean deleted = linkedCommentsDeleted.getIfPresent(msgid);
+
+    if (deleted == null) {
+      Comment comment = commentService.getById(msgid);
+
+      deleted = comment.isDeleted();
+      linkedCommentsDeleted.put(msgid, deleted);
+    }
+
+    return deleted;
+  }
 }
@@ -0,0 +1,41 @@
+package ru.org.linux.monitoring
+
+import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
+
+import org.aopalliance.intercept.{MethodInterceptor, MethodInvocation}
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Component
+import org.springframework.util.ClassUtils
+
+/**
+ * Время выполнения методов DAO. Подключается к бинам *Dao
+ * через BeanNameAutoProxyCreator в applicationContext.xml
+ */
+@Component
+class DaoLatencyInterceptor @Autowired() (metrics: LatencyMetrics) extends MethodInterceptor {
+  private val names = new ConcurrentHashMap[Method, String]()
+
+  override def invoke(invocation: MethodInvocation): AnyRef = {
+    val start = System.nanoTime()
+
+    try {
+      invocation.proceed()
+    } finally {
+      metrics.recordDao(name(invocation), (System.nanoTime() - start) / 1000)
+    }
+  }
+
+  private def name(invocation: MethodInvocation): String = {
+    val method = invocation.getMethod
+    val existing = names.get(method)
+
+    if (existing != null) {
+      existing
+    } else {
+      val name = ClassUtils.getUserClass(invocation.getThis).getSimpleName + '.' + method.getName
+      names.putIfAbsent(method, name)
+      name
+    }
+  }
+}
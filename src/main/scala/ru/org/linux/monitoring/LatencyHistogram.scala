@@ -0,0 +1,106 @@
+package ru.org.linux.monitoring
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray}
+
+import ru.org.linux.monitoring.LatencyHistogram._
+
+/**
+ * Гистограмма времени выполнения в микросекундах.
+ *
+ * Значения раскладываются по корзинам как в HdrHistogram: 16 корзин на каждую
+ * степень двойки, то есть относительная ошибка не больше 1/16. Запись
+ * не блокирует и не выделяет память.
+ */
+class LatencyHistogram {
+  private val counts = new AtomicLongArray(BucketCount)
+  private val total = new AtomicLong()
+  private val sum = new AtomicLong()
+  private val maximum = new AtomicLong()
+
+  def record(micros: Long): Unit = {
+    val value = math.max(0, micros)
+
+    counts.incrementAndGet(bucket(value))
+    total.incrementAndGet()
+    sum.addAndGet(value)
+
+    var max = maximum.get()
+    while (value > max && !maximum.compareAndSet(max, value)) {
+      max = maximum.get()
+    }
+  }
+
+  def count: Long = total.get()
+
+  def max: Long = maximum.get()
+
+  def mean: Double = {
+    val n = total.get()
+    if (n == 0) 0 else sum.get().toDouble / n
+  }
+
+  /**
+   * Значение, не превышаемое долей q записанных значений
+   *
+   * @param q доля от 0 до 1
+   * @return значение в микросекундах, с точностью до корзины
+   */
+  def percentile(q: Double): Long = {
+    val snapshot = Array.tabulate(BucketCount)(counts.get)
+    val n = snapshot.sum
+
+    if (n == 0) {
+      0
+    } else {
+      val target = math.max(1, math.ceil(q * n).toLong)
+
+      var seen = 0L
+      var i = 0
+
+      while (seen + snapshot(i) < target) {
+        seen += snapshot(i)
+        i += 1
+      }
+
+      math.min(upperBound(i), maximum.get())
+    }
+  }
+}
+
+object LatencyHistogram {
+  private val SubBucketBits = 4
+  private val SubBuckets = 1 << SubBucketBits
+  private val MaxExponent = 40 // около 12 суток
+
+  private[monitoring] val BucketCount = (MaxExponent - SubBucketBits + 2) * SubBuckets
+
+  private[monitoring] def bucket(value: Long): Int = {
+    if (value < SubBuckets) {
+      value.toInt
+    } else {
+      val exponent = math.min(63 - java.lang.Long.numberOfLeadingZeros(value), MaxExponent)
+      val sub = if (exponent == MaxExponent && (value >> MaxExponent) > 1) {
+        SubBuckets - 1
+      } else {
+        ((value >> (exponent - SubBucketBits)) & (SubBuckets - 1)).toInt
+      }
+
+      (exponent - SubBucketBits + 1) * SubBuckets + sub
+    }
+  }
+
+  private[monitoring] def lowerBound(index: Int): Long = {
+    if (index < SubBuckets) {
+      index
+    } else {
+      val exponent = index / SubBuckets + SubBucketBits - 1
+      val sub = index % SubBuckets
+
+      (SubBuckets + sub).toLong << (exponent - SubBucketBits)
+    }
+  }
+
+  private[monitoring] def upperBound(index: Int): Long = {
+    if (index + 1 < BucketCount) lowerBound(index + 1) - 1 else Long.MaxValue
+  }
+}
@@ -0,0 +1,69 @@
+package ru.org.linux.monitoring
+
+import java.util.concurrent.ConcurrentHashMap
+
+import org.springframework.jmx.export.annotation.{ManagedOperation, ManagedResource}
+import org.springframework.stereotype.Component
+
+import scala.collection.JavaConverters._
+
+/**
+ * Гистограммы времени выполнения, собираемые в памяти процесса
+ */
+@Component
+@ManagedResource(objectName = "lor:name=LatencyMetrics")
+class LatencyMetrics {
+  private val controllers = new ConcurrentHashMap[String, LatencyHistogram]()
+  private val daos = new ConcurrentHashMap[String, LatencyHistogram]()
+  private val queries = new ConcurrentHashMap[String, LatencyHistogram]()
+
+  /**
+   * Записать время обработки запроса контроллером
+   *
+   * @param name имя контроллера и метода
+   * @param micros время в микросекундах
+   */
+  def recordController(name: String, micros: Long): Unit = histogram(controllers, name).record(micros)
+
+  /**
+   * Записать время выполнения метода DAO
+   *
+   * @param name имя класса DAO и метода
+   * @param micros время в микросекундах
+   */
+  def recordDao(name: String, micros: Long): Unit = histogram(daos, name).record(micros)
+
+  /**
+   * Записать число SQL запросов, выполненных при обработке запроса контроллером
+   *
+   * @param name имя контроллера и метода
+   * @param count число запросов
+   */
+  def recordQueries(name: String, count: Int): Unit = histogram(queries, name).record(count)
+
+  def controllerHistograms: Map[String, LatencyHistogram] = controllers.asScala.toMap
+
+  def daoHistograms: Map[String, LatencyHistogram] = daos.asScala.toMap
+
+  def queryHistograms: Map[String, LatencyHistogram] = queries.asScala.toMap
+
+  @ManagedOperation
+  def reset(): Unit = {
+    controllers.clear()
+    daos.clear()
+    queries.clear()
+  }
+
+  private def histogram(map: ConcurrentHashMap[String, LatencyHistogram], name: String): LatencyHistogram = {
+    val existing = map.get(name)
+
+    if (existing != null) {
+      existing
+    } else {
+      val created = new LatencyHistogram
+      val previous = map.putIfAbsent(name, created)
+
+      if (previous != null) previous else created
+    }
+  }
+}
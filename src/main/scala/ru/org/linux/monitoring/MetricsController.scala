@@ -0,0 +1,55 @@
+package ru.org.linux.monitoring
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.stereotype.Controller
+import org.springframework.web.bind.annotation.{RequestMapping, RequestMethod}
+import org.springframework.web.servlet.ModelAndView
+
+import scala.beans.BeanProperty
+import scala.collection.JavaConverters._
+
+/**
+ * Перцентили времени ответа контроллеров и DAO, собранные LatencyMetrics
+ */
+@Controller
+class MetricsController @Autowired() (metrics: LatencyMetrics) {
+  @RequestMapping(value = Array("/admin/metrics"), method = Array(RequestMethod.GET))
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  def metricsPage(): ModelAndView = {
+    val mv = new ModelAndView("metrics")
+
+    mv.addObject("controllers", rows(metrics.controllerHistograms, 1000).asJava)
+    mv.addObject("daos", rows(metrics.daoHistograms, 1000).asJava)
+    mv.addObject("queries", rows(metrics.queryHistograms, 1).asJava)
+
+    mv
+  }
+
+  /**
+   * Строки таблицы, сначала с наибольшим суммарным временем
+   */
+  private def rows(histograms: Map[String, LatencyHistogram], scale: Double): Seq[MetricRow] = {
+    histograms.toVector.map { case (name, histogram) =>
+      MetricRow(
+        name,
+        histogram.count,
+        histogram.mean / scale,
+        histogram.percentile(0.5) / scale,
+        histogram.percentile(0.95) / scale,
+        histogram.percentile(0.99) / scale,
+        histogram.max / scale
+      )
+    }.sortBy(row => -row.count * row.mean)
+  }
+}
+
+case class MetricRow(
+  @BeanProperty name: String,
+  @BeanProperty count: Long,
+  @BeanProperty mean: Double,
+  @BeanProperty p50: Double,
+  @BeanProperty p95: Double,
+  @BeanProperty p99: Double,
+  @BeanProperty max: Double
+)
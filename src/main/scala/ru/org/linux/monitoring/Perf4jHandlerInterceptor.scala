@@ -9,50 +9,39 @@ import javax.servlet.http.{HttpServletResponse, HttpServletRequest}
 import org.springframework.web.servlet.ModelAndView
 import Perf4jHandlerInterceptor._
 import org.springframework.beans.factory.annotation.Autowired
-import org.elasticsearch.client.Client
-import org.apache.commons.io.IOUtils
-import javax.annotation.PostConstruct
 import com.typesafe.scalalogging.slf4j.StrictLogging
-import org.elasticsearch.ElasticsearchException
-import org.elasticsearch.action.ActionListener
-import org.elasticsearch.action.index.IndexResponse
-import scala.collection.JavaConverters._
 
 object Perf4jHandlerInterceptor {
   private val ATTRIBUTE = "perf4jStopWatch"
+  private val START_ATTRIBUTE = "perf4jStartNanos"
+  private val NAME_ATTRIBUTE = "perf4jHandlerName"
   private val LOGGING_THRESHOLD = 500
   private val ELASTIC_THRESHOLD = 500
-  private val PERF_INDEX = "perf"
-  private val PERF_TYPE = "metric"
 }
 
-class Perf4jHandlerInterceptor @Autowired() (elastic:Client) extends HandlerInterceptorAdapter with StrictLogging {
-  @PostConstruct
-  def createIndex {
-    try {
-      if (!elastic.admin.indices.prepareExists(PERF_INDEX).execute.actionGet.isExists) {
-        val mappingSource: String = IOUtils.toString(getClass.getClassLoader.getResource("perf-mapping.json"))
-        logger.info("Create performance index")
-        elastic.admin.indices.prepareCreate(PERF_INDEX).setSource(mappingSource).execute.actionGet
-      }
-    } catch {
-      case ex:ElasticsearchException => logger.warn("Unable to create performance index", ex)
-    }
-  }
-
+class Perf4jHandlerInterceptor @Autowired() (
+  shipper:PerfMetricShipper,
+  metrics:LatencyMetrics
+) extends HandlerInterceptorAdapter with StrictLogging {
   override def preHandle(request: HttpServletRequest, response: HttpServletResponse, handler: AnyRef): Boolean = {
     if (handler.isInstanceOf[ResourceHttpRequestHandler] || handler.isInstanceOf[DefaultServletHttpRequestHandler]) {
       return true
     }
 
-    val name = handler match {
-      case method: HandlerMethod => method.getBeanType.getSimpleName
-      case _ => handler.getClass.getSimpleName
+    val (name, fullName) = handler match {
+      case method: HandlerMethod =>
+        val name = method.getBeanType.getSimpleName
+        (name, name + '.' + method.getMethod.getName)
+      case _ =>
+        val name = handler.getClass.getSimpleName
+        (name, name)
     }
 
     val watch = new Slf4JStopWatch(name)
     watch.setTimeThreshold(LOGGING_THRESHOLD)
     request.setAttribute(ATTRIBUTE, watch)
+    request.setAttribute(NAME_ATTRIBUTE, fullName)
+    request.setAttribute(START_ATTRIBUTE, Long.box(System.nanoTime()))
 
     true
   }
@@ -63,26 +52,23 @@ class Perf4jHandlerInterceptor @Autowired() (elastic:Client) extends HandlerInte
     if (stopWatch != null) {
       stopWatch.stop
 
-      if (stopWatch.getElapsedTime > ELASTIC_THRESHOLD) {
-        val doc:Map[String, AnyRef] = Map(
-          "controller" -> stopWatch.getTag,
-          "startdate" -> Long.box(stopWatch.getStartTime),
-          "elapsed" -> Long.box(stopWatch.getElapsedTime)
-        )
+      val start = request.getAttribute(START_ATTRIBUTE).asInstanceOf[java.lang.Long]
+      val name = request.getAttribute(NAME_ATTRIBUTE).asInstanceOf[String]
 
-        try {
-          val result = elastic.prepareIndex(PERF_INDEX, PERF_TYPE).setSource(doc.asJava).execute()
+      metrics.recordController(name, (System.nanoTime() - start) / 1000)
 
-          result.addListener(new ActionListener[IndexResponse] {
-            override def onResponse(response: IndexResponse): Unit = {}
-            override def onFailure(e: Throwable): Unit = {
-              logger.info("Unable to log performance metric", e)
-            }
-          })
-        } catch {
-          case ex:ElasticsearchException => logger.info("Unable to log performance metric", ex)
-        }
+      if (stopWatch.getElapsedTime > ELASTIC_THRESHOLD) {
+        shipper.offer(stopWatch.getTag, stopWatch.getStartTime, stopWatch.getElapsedTime)
       }
     }
   }
+
+  override def afterCompletion(request: HttpServletRequest, response: HttpServletResponse, handler: AnyRef, ex: Exception) {
+    val name = request.getAttribute(NAME_ATTRIBUTE).asInstanceOf[String]
+
+    // запросы при отрисовке view тоже считаются
+    if (name != null) {
+      metrics.recordQueries(name, QueryCounter.count)
+    }
+  }
 }
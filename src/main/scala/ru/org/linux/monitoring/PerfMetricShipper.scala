@@ -0,0 +1,146 @@
+package ru.org.linux.monitoring
+
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.util.concurrent.{ConcurrentLinkedQueue, Executors, TimeUnit}
+import javax.annotation.{PostConstruct, PreDestroy}
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.typesafe.scalalogging.slf4j.StrictLogging
+import org.apache.commons.io.IOUtils
+import org.elasticsearch.action.ActionListener
+import org.elasticsearch.action.bulk.BulkResponse
+import org.elasticsearch.client.Client
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jmx.export.annotation.{ManagedAttribute, ManagedResource}
+import org.springframework.stereotype.Component
+import ru.org.linux.monitoring.PerfMetricShipper._
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+/**
+ * Отправка метрик медленных запросов в Elasticsearch.
+ *
+ * Потоки обработки запросов только кладут метрику в ограниченную неблокирующую
+ * очередь; при переполнении метрика отбрасывается. Очередь разбирается фоновым
+ * потоком, который отправляет метрики bulk запросами.
+ */
+@Component
+@ManagedResource(objectName = "lor:name=PerfMetricShipper")
+class PerfMetricShipper @Autowired() (elastic: Client) extends StrictLogging {
+  private val queue = new ConcurrentLinkedQueue[java.util.Map[String, AnyRef]]()
+  private val queueSize = new AtomicInteger()
+
+  private val queued = new AtomicLong()
+  private val dropped = new AtomicLong()
+  private val sent = new AtomicLong()
+  private val failed = new AtomicLong()
+
+  private val executor = Executors.newSingleThreadScheduledExecutor(
+    new ThreadFactoryBuilder().setNameFormat("perf-metric-shipper").setDaemon(true).build()
+  )
+
+  @PostConstruct
+  def start(): Unit = {
+    createIndex()
+
+    executor.scheduleWithFixedDelay(new Runnable {
+      override def run(): Unit = drain()
+    }, FlushInterval, FlushInterval, TimeUnit.MILLISECONDS)
+  }
+
+  @PreDestroy
+  def stop(): Unit = executor.shutdownNow()
+
+  private def createIndex(): Unit = {
+    try {
+      if (!elastic.admin.indices.prepareExists(PerfIndex).execute.actionGet.isExists) {
+        val mappingSource: String = IOUtils.toString(getClass.getClassLoader.getResource("perf-mapping.json"))
+        logger.info("Create performance index")
+        elastic.admin.indices.prepareCreate(PerfIndex).setSource(mappingSource).execute.actionGet
+      }
+    } catch {
+      case NonFatal(ex) => logger.warn("Unable to create performance index", ex)
+    }
+  }
+
+  /**
+   * Поставить метрику в очередь; никогда не блокирует
+   */
+  def offer(controller: String, startDate: Long, elapsed: Long): Unit = {
+    if (queueSize.incrementAndGet() > QueueCapacity) {
+      queueSize.decrementAndGet()
+      dropped.incrementAndGet()
+    } else {
+      queue.offer(Map[String, AnyRef](
+        "controller" -> controller,
+        "startdate" -> Long.box(startDate),
+        "elapsed" -> Long.box(elapsed)
+      ).asJava)
+
+      queued.incrementAndGet()
+    }
+  }
+
+  private def drain(): Unit = {
+    try {
+      var doc = queue.poll()
+
+      while (doc != null) {
+        val bulk = elastic.prepareBulk()
+
+        while (doc != null && bulk.numberOfActions < BulkSize) {
+          queueSize.decrementAndGet()
+          bulk.add(elastic.prepareIndex(PerfIndex, PerfType).setSource(doc))
+          doc = queue.poll()
+        }
+
+        val count = bulk.numberOfActions
+
+        bulk.execute().addListener(new ActionListener[BulkResponse] {
+          override def onResponse(response: BulkResponse): Unit = {
+            if (response.hasFailures) {
+              val failures = response.getItems.count(_.isFailed)
+              failed.addAndGet(failures)
+              sent.addAndGet(count - failures)
+            } else {
+              sent.addAndGet(count)
+            }
+          }
+
+          override def onFailure(e: Throwable): Unit = {
+            failed.addAndGet(count)
+            logger.info("Unable to log performance metrics", e)
+          }
+        })
+      }
+    } catch {
+      // исключение остановило бы дальнейшие запуски
+      case NonFatal(ex) => logger.info("Unable to log performance metrics", ex)
+    }
+  }
+
+  @ManagedAttribute
+  def getQueueSize: Int = queueSize.get
+
+  @ManagedAttribute
+  def getQueuedCount: Long = queued.get
+
+  @ManagedAttribute
+  def getDroppedCount: Long = dropped.get
+
+  @ManagedAttribute
+  def getSentCount: Long = sent.get
+
+  @ManagedAttribute
+  def getFailedCount: Long = failed.get
+}
+
+object PerfMetricShipper {
+  private val PerfIndex = "perf"
+  private val PerfType = "metric"
+
+  private val QueueCapacity = 10000
+  private val BulkSize = 500
+  private val FlushInterval = 1000
+}
@@ -0,0 +1,58 @@
+package ru.org.linux.monitoring
+
+import scala.collection.mutable
+
+/**
+ * Счетчик SQL запросов, выполненных при обработке текущего HTTP запроса.
+ *
+ * Считает только между start и stop; в фоновых потоках ничего не хранит.
+ * Во время запроса запоминается только текст SQL, нормализация выполняется
+ * при построении отчета.
+ */
+object QueryCounter {
+  private class Counter {
+    var count = 0
+    val statements = mutable.HashMap[String, Int]()
+  }
+
+  private val current = new ThreadLocal[Counter]
+
+  def start(): Unit = current.set(new Counter)
+
+  /**
+   * Число запросов с момента start или 0, если счетчик не запущен
+   */
+  def count: Int = {
+    val counter = current.get()
+    if (counter != null) counter.count else 0
+  }
+
+  /**
+   * Число выполнений каждой формы запроса, см. SqlShape
+   */
+  def shapes: Map[String, Int] = {
+    val counter = current.get()
+
+    if (counter == null) {
+      Map.empty
+    } else {
+      counter.statements.toSeq.groupBy(e => SqlShape.normalize(e._1)).mapValues(_.map(_._2).sum).toMap
+    }
+  }
+
+  /**
+   * Формы запросов, выполненные больше threshold раз: вероятный N+1
+   */
+  def repeated(threshold: Int): Map[String, Int] = shapes.filter(_._2 > threshold)
+
+  def stop(): Unit = current.remove()
+
+  private[monitoring] def record(sql: String): Unit = {
+    val counter = current.get()
+
+    if (counter != null) {
+      counter.count += 1
+      counter.statements(sql) = counter.statements.getOrElse(sql, 0) + 1
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package ru.org.linux.monitoring
+
+import java.lang.reflect.{InvocationHandler, InvocationTargetException, Method, Proxy}
+import java.sql.{Connection, Statement}
+import javax.sql.DataSource
+
+import org.springframework.jdbc.datasource.DelegatingDataSource
+
+/**
+ * DataSource, записывающий выполняемые на его соединениях запросы в QueryCounter.
+ *
+ * Для PreparedStatement и CallableStatement запрос записывается при создании
+ * statement'а, для обычного Statement — при выполнении. Все JdbcTemplate
+ * приложения, и Java, и Scala, работают через этот DataSource.
+ */
+class QueryCountingDataSource(target: DataSource) extends DelegatingDataSource(target) {
+  override def getConnection(): Connection = wrap(super.getConnection())
+
+  override def getConnection(username: String, password: String): Connection =
+    wrap(super.getConnection(username, password))
+
+  private def wrap(connection: Connection): Connection = {
+    Proxy.newProxyInstance(
+      classOf[Connection].getClassLoader,
+      Array(classOf[Connection]),
+      new ConnectionHandler(connection)
+    ).asInstanceOf[Connection]
+  }
+
+  /**
+   * Для destroy-method="close" исходного DataSource
+   */
+  def close(): Unit = target match {
+    case closeable: AutoCloseable =>
+      closeable.close()
+    case _ =>
+  }
+
+  private class ConnectionHandler(connection: Connection) extends InvocationHandler {
+    override def invoke(proxy: AnyRef, method: Method, args: Array[AnyRef]): AnyRef = {
+      method.getName match {
+        case "prepareStatement" | "prepareCall" =>
+          QueryCounter.record(args(0).asInstanceOf[String])
+          delegate(connection, method, args)
+        case "createStatement" =>
+          val statement = delegate(connection, method, args).asInstanceOf[Statement]
+
+          Proxy.newProxyInstance(
+            classOf[Statement].getClassLoader,
+            Array(classOf[Statement]),
+            new StatementHandler(statement)
+          )
+        case _ =>
+          delegate(connection, method, args)
+      }
+    }
+  }
+
+  private class StatementHandler(statement: Statement) extends InvocationHandler {
+    override def invoke(proxy: AnyRef, method: Method, args: Array[AnyRef]): AnyRef = {
+      val name = method.getName
+
+      if ((name.startsWith("execute") || name == "addBatch") && args != null && args.length > 0) {
+        QueryCounter.record(args(0).asInstanceOf[String])
+      }
+
+      delegate(statement, method, args)
+    }
+  }
+
+  private def delegate(obj: AnyRef, method: Method, args: Array[AnyRef]): AnyRef = {
+    try {
+      method.invoke(obj, (if (args != null) args else Array.empty[AnyRef]): _*)
+    } catch {
+      case ex: InvocationTargetException =>
+        throw ex.getTargetException
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package ru.org.linux.monitoring
+
+import javax.sql.DataSource
+
+import org.springframework.beans.factory.config.BeanPostProcessor
+import org.springframework.stereotype.Component
+
+/**
+ * Заворачивает DataSource приложения в QueryCountingDataSource
+ */
+@Component
+class QueryCountingPostProcessor extends BeanPostProcessor {
+  override def postProcessBeforeInitialization(bean: AnyRef, beanName: String): AnyRef = bean
+
+  override def postProcessAfterInitialization(bean: AnyRef, beanName: String): AnyRef = bean match {
+    case _: QueryCountingDataSource =>
+      bean
+    case dataSource: DataSource =>
+      new QueryCountingDataSource(dataSource)
+    case _ =>
+      bean
+  }
+}
@@ -0,0 +1,51 @@
+package ru.org.linux.monitoring
+
+import javax.servlet.http.{HttpServletRequest, HttpServletResponse}
+
+import com.typesafe.scalalogging.slf4j.StrictLogging
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.web.servlet.ModelAndView
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter
+import ru.org.linux.monitoring.SqlQueryInterceptor._
+import ru.org.linux.spring.SiteConfig
+
+object SqlQueryInterceptor {
+  val HEADER = "X-SQL-Queries"
+}
+
+/**
+ * Подсчет SQL запросов HTTP запроса и поиск N+1.
+ *
+ * Должен быть первым в списке interceptor'ов, чтобы счетчик работал
+ * на время всех остальных. Если одна форма запроса выполнена больше
+ * SqlRepeatThreshold раз, в лог пишется предупреждение. Заголовок
+ * X-SQL-Queries (SqlQueryHeader=true) выставляется до отрисовки view
+ * и не учитывает ее запросы.
+ */
+class SqlQueryInterceptor @Autowired() (config: SiteConfig) extends HandlerInterceptorAdapter with StrictLogging {
+  override def preHandle(request: HttpServletRequest, response: HttpServletResponse, handler: AnyRef): Boolean = {
+    QueryCounter.start()
+
+    true
+  }
+
+  override def postHandle(request: HttpServletRequest, response: HttpServletResponse, handler: AnyRef, modelAndView: ModelAndView) {
+    if (config.enableSqlQueryHeader()) {
+      response.setHeader(HEADER, QueryCounter.count.toString)
+    }
+  }
+
+  override def afterCompletion(request: HttpServletRequest, response: HttpServletResponse, handler: AnyRef, ex: Exception) {
+    try {
+      val repeated = QueryCounter.repeated(config.getSqlRepeatThreshold)
+
+      if (repeated.nonEmpty) {
+        val report = repeated.toSeq.sortBy(-_._2).map { case (shape, count) => s"$count x $shape" }
+
+        logger.warn(s"Repeated SQL in ${request.getRequestURI}: ${QueryCounter.count} queries total; ${report.mkString("; ")}")
+      }
+    } finally {
+      QueryCounter.stop()
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package ru.org.linux.monitoring
+
+/**
+ * Форма SQL запроса: текст без литералов, с одним параметром вместо
+ * списков IN и без лишних пробелов. Запросы, отличающиеся только
+ * параметрами, имеют одну форму.
+ */
+object SqlShape {
+  private val StringLiteral = """'(?:[^']|'')*'""".r
+  private val NumberLiteral = """\b\d+(?:\.\d+)?\b""".r
+  private val ParameterList = """\(\s*\?(?:\s*,\s*\?)*\s*\)""".r
+  private val Whitespace = """\s+""".r
+
+  def normalize(sql: String): String = {
+    val literals = NumberLiteral.replaceAllIn(StringLiteral.replaceAllIn(sql, "?"), "?")
+
+    Whitespace.replaceAllIn(ParameterList.replaceAllIn(literals, "(?)"), " ").trim
+  }
+}
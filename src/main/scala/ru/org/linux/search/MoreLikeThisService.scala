@@ -1,76 +1,186 @@
 package ru.org.linux.search
 
-import org.springframework.stereotype.Service
-import org.springframework.beans.factory.annotation.Autowired
-import org.elasticsearch.client.Client
-import ru.org.linux.topic.Topic
-import scala.collection.JavaConversions._
-import scala.collection.JavaConverters._
-import org.elasticsearch.index.query.QueryBuilders._
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{ConcurrentHashMap, LinkedBlockingQueue, RejectedExecutionException, ThreadPoolExecutor, TimeUnit}
+import javax.annotation.{PostConstruct, PreDestroy}
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.typesafe.scalalogging.slf4j.StrictLogging
+import org.apache.commons.io.IOUtils
+import org.elasticsearch.ElasticsearchException
+import org.elasticsearch.action.ActionListener
+import org.elasticsearch.action.get.GetResponse
+import org.elasticsearch.action.search.SearchRequestBuilder
+import org.elasticsearch.client.Client
 import org.elasticsearch.index.query.FilterBuilders._
+import org.elasticsearch.index.query.QueryBuilders._
+import org.elasticsearch.search.SearchHit
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jmx.export.annotation.{ManagedAttribute, ManagedOperation, ManagedResource}
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Service
+import org.springframework.web.util.UriComponentsBuilder
+import ru.org.linux.section.SectionService
+import ru.org.linux.spring.dao.MsgbaseDao
 import ru.org.linux.tag.TagRef
-import scala.beans.BeanProperty
+import ru.org.linux.topic.{Topic, TopicDao, TopicTagService}
 import ru.org.linux.util.StringUtil
-import org.springframework.web.util.UriComponentsBuilder
-import org.elasticsearch.search.SearchHit
-import org.elasticsearch.action.ActionListener
-import org.elasticsearch.action.search.{SearchRequestBuilder, SearchResponse}
-import org.elasticsearch.ElasticsearchException
-import scala.concurrent.{TimeoutException, Await, Future, Promise}
+import ru.org.linux.util.bbcode.LorCodeService
+
+import scala.beans.BeanProperty
+import scala.collection.JavaConversions._
+import scala.collection.JavaConverters._
 import scala.concurrent.duration._
-import scala.concurrent.ExecutionContext.Implicits.global
-import ru.org.linux.section.SectionService
-import com.google.common.cache.CacheBuilder
-import java.util.concurrent.TimeUnit
+import scala.concurrent.{Await, Future, Promise, TimeoutException}
+import scala.util.control.NonFatal
 
+/**
+ * Похожие топики.
+ *
+ * Списки похожих топиков вычисляются в фоне после индексации топика
+ * и по расписанию для активных топиков, и хранятся в отдельном индексе
+ * Elasticsearch. Страница топика читает готовый список одним get запросом;
+ * если списка еще нет, он ставится в очередь на вычисление.
+ */
 @Service
+@ManagedResource(objectName = "lor:name=MoreLikeThisService")
 class MoreLikeThisService @Autowired() (
   client:Client,
-  sectionService:SectionService
+  sectionService:SectionService,
+  topicDao:TopicDao,
+  topicTagService:TopicTagService,
+  msgbaseDao:MsgbaseDao,
+  lorCodeService:LorCodeService
 ) extends StrictLogging {
   import MoreLikeThisService._
 
   type Result = java.util.List[java.util.List[MoreLikeThisTopic]]
 
-  private val cache = CacheBuilder
-    .newBuilder()
-    .maximumSize(CacheSize)
-    .expireAfterWrite(1, TimeUnit.HOURS)
-    .build[Integer, Result]()
+  private val pending = Collections.newSetFromMap(new ConcurrentHashMap[Integer, java.lang.Boolean]())
 
-  def search(topic:Topic, tags:java.util.List[TagRef], plainText:String):Future[Result] = {
-    val cachedValue = cache.getIfPresent(topic.getId)
-    if (cachedValue != null) {
-      Future.successful(cachedValue)
-    } else {
-      val promise = Promise[SearchResponse]()
+  private val executor = new ThreadPoolExecutor(
+    1, 1, 0, TimeUnit.MILLISECONDS,
+    new LinkedBlockingQueue[Runnable](QueueCapacity),
+    new ThreadFactoryBuilder().setNameFormat("more-like-this").setDaemon(true).build()
+  )
 
-      try {
-        val query = makeQuery(topic, plainText, tags)
+  private val computed = new AtomicLong()
+  private val failed = new AtomicLong()
+  private val missing = new AtomicLong()
+  private val rejected = new AtomicLong()
 
-        query.execute().addListener(new ActionListener[SearchResponse]() {
+  @PostConstruct
+  def createIndex(): Unit = {
+    try {
+      if (!client.admin.indices.prepareExists(SimilarIndex).execute.actionGet.isExists) {
+        val mappingSource = IOUtils.toString(getClass.getClassLoader.getResource("similar-mapping.json"))
+        logger.info("Create similar topics index")
+        client.admin.indices.prepareCreate(SimilarIndex).setSource(mappingSource).execute.actionGet
+      }
+    } catch {
+      case NonFatal(ex) => logger.warn("Unable to create similar topics index", ex)
+    }
+  }
+
+  @PreDestroy
+  def stop(): Unit = executor.shutdownNow()
+
+  /**
+   * Прочитать готовый список похожих топиков
+   */
+  def search(topic:Topic):Future[Result] = {
+    val promise = Promise[Result]()
+
+    try {
+      client
+        .prepareGet(SimilarIndex, SimilarType, topic.getId.toString)
+        .execute()
+        .addListener(new ActionListener[GetResponse]() {
           override def onFailure(e: Throwable): Unit = promise.failure(e)
-          override def onResponse(response: SearchResponse): Unit = promise.success(response)
-        })
 
-        val result:Future[Result] = promise.future.map(result => if (result.getHits.nonEmpty) {
-          val half = result.getHits.size / 2 + result.getHits.size % 2
+          override def onResponse(response: GetResponse): Unit = {
+            if (response.isExists) {
+              promise.success(fromSource(response.getSourceAsMap))
+            } else {
+              missing.incrementAndGet()
+              schedule(topic.getId)
+              promise.success(Seq())
+            }
+          }
+        })
+    } catch {
+      case ex: ElasticsearchException => promise.failure(ex)
+    }
 
-          result.getHits.map(processHit).grouped(half).map(_.toSeq.asJava).toSeq.asJava
-        } else Seq())
+    promise.future
+  }
 
-        result.onSuccess {
-          case v => cache.put(topic.getId, v)
-        }
+  /**
+   * Поставить топики в очередь на вычисление похожих; никогда не блокирует
+   */
+  def schedule(topicIds:java.util.Collection[Integer]):Unit = topicIds.foreach(id => schedule(id.intValue))
 
-        result
+  def schedule(topicId:Int):Unit = {
+    if (pending.add(topicId)) {
+      try {
+        executor.execute(new Runnable {
+          override def run(): Unit = {
+            pending.remove(topicId)
+            compute(topicId)
+          }
+        })
       } catch {
-        case ex: ElasticsearchException => Future.failed(ex)
+        // очередь заполнена: топик будет поставлен в очередь при следующем обращении
+        case _: RejectedExecutionException =>
+          pending.remove(topicId)
+          rejected.incrementAndGet()
       }
     }
   }
 
+  /**
+   * Пересчитать похожие для топиков, измененных за последние сутки
+   */
+  @Scheduled(fixedDelay = RefreshInterval)
+  @ManagedOperation
+  def refreshActive():Unit = {
+    val active = topicDao.getRecentlyModifiedIds(ActiveDays)
+
+    logger.debug(s"Refreshing similar topics for ${active.size} active topics")
+
+    schedule(active)
+  }
+
+  private def compute(topicId:Int):Unit = {
+    try {
+      val topic = topicDao.getById(topicId)
+
+      if (topic.isDeleted || topic.isDraft) {
+        client.prepareDelete(SimilarIndex, SimilarType, topicId.toString).execute().actionGet()
+      } else {
+        val tags = topicTagService.getTagRefs(topic)
+        val plainText = lorCodeService.extractPlainText(topicId, msgbaseDao.getMessageText(topicId))
+
+        val response = makeQuery(topic, plainText, tags).execute().actionGet()
+        val topics = response.getHits.map(processHit).toSeq
+
+        client
+          .prepareIndex(SimilarIndex, SimilarType, topicId.toString)
+          .setSource(toSource(topics))
+          .execute()
+          .actionGet()
+
+        computed.incrementAndGet()
+      }
+    } catch {
+      // исключение не должно останавливать поток вычисления
+      case NonFatal(ex) =>
+        failed.incrementAndGet()
+        logger.warn(s"Unable to find similar topics for $topicId", ex)
+    }
+  }
+
   def makeQuery(topic: Topic, plainText: String, tags: java.util.List[TagRef]):SearchRequestBuilder = {
     val mltQuery = boolQuery()
 
@@ -126,6 +236,21 @@ class MoreLikeThisService @Autowired() (
     )
   }
 
+  @ManagedAttribute
+  def getQueueSize: Int = executor.getQueue.size
+
+  @ManagedAttribute
+  def getComputedCount: Long = computed.get
+
+  @ManagedAttribute
+  def getFailedCount: Long = failed.get
+
+  @ManagedAttribute
+  def getMissingCount: Long = missing.get
+
+  @ManagedAttribute
+  def getRejectedCount: Long = rejected.get
+
   private def titleQuery(topic:Topic) = moreLikeThisFieldQuery("title")
     .likeText(topic.getTitleUnescaped)
     .minTermFreq(0)
@@ -150,7 +275,49 @@ class MoreLikeThisService @Autowired() (
 
 object MoreLikeThisService {
   val Timeout = 500.milliseconds
-  val CacheSize = 2000
+
+  val SimilarIndex = "similar"
+  val SimilarType = "topic"
+
+  private val QueueCapacity = 10000
+  private final val RefreshInterval = 60 * 60 * 1000L
+  private val ActiveDays = 1
+
+  private def toSource(topics:Seq[MoreLikeThisTopic]):java.util.Map[String, AnyRef] = {
+    Map[String, AnyRef](
+      "computed" -> Long.box(System.currentTimeMillis()),
+      "topics" -> topics.map { topic =>
+        Map[String, AnyRef](
+          "title" -> topic.title,
+          "link" -> topic.link,
+          "year" -> Int.box(topic.year),
+          "section" -> topic.section
+        ).asJava
+      }.asJava
+    ).asJava
+  }
+
+  /**
+   * Список из source документа, разбитый на две колонки
+   */
+  private def fromSource(source:java.util.Map[String, AnyRef]):java.util.List[java.util.List[MoreLikeThisTopic]] = {
+    val topics = source.get("topics").asInstanceOf[java.util.List[java.util.Map[String, AnyRef]]].map { doc =>
+      MoreLikeThisTopic(
+        title = doc.get("title").asInstanceOf[String],
+        link = doc.get("link").asInstanceOf[String],
+        year = doc.get("year").asInstanceOf[Number].intValue,
+        section = doc.get("section").asInstanceOf[String]
+      )
+    }
+
+    if (topics.nonEmpty) {
+      val half = topics.size / 2 + topics.size % 2
+
+      topics.grouped(half).map(_.toSeq.asJava).toSeq.asJava
+    } else {
+      Seq[java.util.List[MoreLikeThisTopic]]().asJava
+    }
+  }
 }
 
 case class MoreLikeThisTopic(
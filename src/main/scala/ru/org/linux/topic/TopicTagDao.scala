@@ -10,6 +10,7 @@ import scala.collection.JavaConversions._
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
 import org.springframework.jdbc.core.RowMapper
 import java.sql.ResultSet
+import TopicTagDao._
 
 @Repository
 class TopicTagDao @Autowired() (ds:DataSource) {
@@ -59,7 +60,8 @@ class TopicTagDao @Autowired() (ds:DataSource) {
    */
   def getCountReplacedTags(oldTagId:Int, newTagId:Int):Int = {
     jdbcTemplate.queryForSeq[Integer](
-      "SELECT count (tagid) FROM tags WHERE tagid=? AND msgid NOT IN (SELECT msgid FROM tags WHERE tagid=?)",
+      "SELECT count (tagid) FROM tags JOIN topics ON tags.msgid=topics.id " +
+        "WHERE tagid=? AND NOT deleted AND msgid NOT IN (SELECT msgid FROM tags WHERE tagid=?)",
       oldTagId,
       newTagId
     ).head
@@ -93,14 +95,78 @@ class TopicTagDao @Autowired() (ds:DataSource) {
    * пересчёт счётчиков использования.
    */
   def reCalculateAllCounters():Unit = {
-    jdbcTemplate.update("update tags_values set counter = (select count(*) from tags join topics on tags.msgid=topics.id where tags.tagid=tags_values.id and not deleted)")
+    jdbcTemplate.update(s"update tags_values set counter = $ActualCounter")
   }
 
-  def getTags(topics:Seq[Topic]):Vector[(Int, TagInfo)] = {
-    if (topics.isEmpty) {
+  /**
+   * Получить идентификаторы следующей порции тегов для проверки счётчиков.
+   *
+   * @param afterId идентификатор последнего проверенного тега, 0 - с начала
+   * @param limit   размер порции
+   * @return идентификаторы тегов по возрастанию
+   */
+  def getTagIdsAfter(afterId:Int, limit:Int):java.util.List[Integer] = {
+    jdbcTemplate.queryForSeq[Integer](
+      "SELECT id FROM tags_values WHERE id>? ORDER BY id LIMIT ?",
+      afterId,
+      limit
+    )
+  }
+
+  /**
+   * Исправить счётчики тегов из диапазона, которые не совпадают с числом
+   * неудаленных топиков. Записываются только расходящиеся счётчики.
+   *
+   * @param fromId идентификатор тега, после которого начинается диапазон
+   * @param toId   последний идентификатор тега диапазона
+   * @return идентификаторы исправленных тегов
+   */
+  def repairCounters(fromId:Int, toId:Int):java.util.List[Integer] = {
+    jdbcTemplate.queryForSeq[Integer](
+      s"UPDATE tags_values SET counter = $ActualCounter " +
+        s"WHERE id>? AND id<=? AND counter <> $ActualCounter RETURNING id",
+      fromId,
+      toId
+    )
+  }
+
+  /**
+   * Изменить счётчики всех тегов топика, например при удалении и восстановлении.
+   *
+   * @param msgId идентификационный номер топика
+   * @param delta на какое значение изменить счётчики
+   */
+  def changeCountersByTopic(msgId:Int, delta:Int):Unit = {
+    jdbcTemplate.update(
+      "UPDATE tags_values SET counter=counter+? WHERE id IN (SELECT tagid FROM tags WHERE msgid=?)",
+      delta,
+      msgId
+    )
+  }
+
+  /**
+   * Учитывается ли топик в счётчиках тегов.
+   *
+   * @param msgId идентификационный номер топика
+   * @return true, если топик не удален
+   */
+  def isCounted(msgId:Int):Boolean = {
+    jdbcTemplate.queryForSeq[java.lang.Boolean]("SELECT NOT deleted FROM topics WHERE id=?", msgId).exists(_.booleanValue)
+  }
+
+  def getTags(topics:Seq[Topic]):Vector[(Int, TagInfo)] = getTagsByIds(topics.map(_.getId))
+
+  /**
+   * Получить теги списка топиков одним запросом.
+   *
+   * @param ids идентификационные номера топиков
+   * @return пары (id топика, тег), теги каждого топика упорядочены по названию
+   */
+  def getTagsByIds(ids:Seq[Int]):Vector[(Int, TagInfo)] = {
+    if (ids.isEmpty) {
       Vector.empty
     } else {
-      val topicIds:java.util.List[Int] = topics.map(_.getId)
+      val topicIds:java.util.List[Int] = ids
 
       namedJdbcTemplate.query(
         "SELECT msgid, tags_values.value, tags_values.counter, tags_values.id FROM tags, tags_values WHERE tags.msgid in (:list) AND tags_values.id=tags.tagid ORDER BY value",
@@ -136,3 +202,11 @@ class TopicTagDao @Autowired() (ds:DataSource) {
     jdbcTemplate.update("UPDATE tags_values SET counter=counter-? WHERE id=?", tagCount, tagId)
   }
 }
+
+object TopicTagDao {
+  /**
+   * Число неудаленных топиков с тегом tags_values.id
+   */
+  private val ActualCounter =
+    "(SELECT count(*) FROM tags JOIN topics ON tags.msgid=topics.id WHERE tags.tagid=tags_values.id AND NOT deleted)"
+}
@@ -39,6 +39,24 @@ class TopicTagService @Autowired() (
     topicTagDao.reCalculateAllCounters()
   }
 
+  /**
+   * Уменьшить счётчики тегов удаленного топика.
+   *
+   * @param msgId идентификационный номер топика
+   */
+  def topicDeleted(msgId:Int):Unit = {
+    topicTagDao.changeCountersByTopic(msgId, -1)
+  }
+
+  /**
+   * Увеличить счётчики тегов восстановленного топика.
+   *
+   * @param msgId идентификационный номер топика
+   */
+  def topicUndeleted(msgId:Int):Unit = {
+    topicTagDao.changeCountersByTopic(msgId, 1)
+  }
+
   /**
    * Обновить список тегов сообщения по идентификационному номеру сообщения.
    *
@@ -73,8 +91,9 @@ class TopicTagService @Autowired() (
 
       val modified = !newTags.isEmpty || !deleteTags.isEmpty
 
-      if (modified) {
-        updateCounters(oldTags, newTags)
+      // удаленные топики в счётчиках не учитываются
+      if (modified && topicTagDao.isCounted(msgId)) {
+        updateCounters(oldTags, tagList)
       }
 
       modified
@@ -117,6 +136,22 @@ class TopicTagService @Autowired() (
 
   private def getTags(msgId:Int):java.util.List[String] = topicTagDao.getTags(msgId).map(_.name)
 
+  /**
+   * Получить все теги нескольких сообщений одним запросом.
+   *
+   * @param msgIds идентификационные номера сообщений
+   * @return теги сообщений, ключ - идентификационный номер сообщения
+   */
+  def getTags(msgIds:java.util.Collection[Integer]):ImmutableListMultimap[Integer, String] = {
+    val builder = ImmutableListMultimap.builder[Integer, String]()
+
+    for ((msgid, tag) <- topicTagDao.getTagsByIds(msgIds.map(_.intValue).toVector)) {
+      builder.put(msgid, tag.name)
+    }
+
+    builder.build()
+  }
+
   def getTagRefs(topic:Topic):java.util.List[TagRef] =
     topicTagDao.getTags(topic.getId).map(tag => tagRef(tag))
 
@@ -143,6 +178,25 @@ class TopicTagService @Autowired() (
     val tags = topicTagDao.getTags(msgId).map(_.name).take(MAX_TAGS_IN_TITLE)
     ImmutableList.copyOf(tags.toIterable)
   }
+
+  /**
+   * Получить теги для заголовков списка топиков одним запросом.
+   * Ограничение по числу тегов для показа в заголовке в таблице
+   *
+   * @param msgIds идентификационные номера топиков
+   * @return теги топиков, ключ - идентификационный номер топика
+   */
+  def getTagsForTitle(msgIds:java.util.Collection[Integer]):ImmutableListMultimap[Integer, String] = {
+    val builder = ImmutableListMultimap.builder[Integer, String]()
+
+    val tags = topicTagDao.getTagsByIds(msgIds.map(_.intValue).toVector)
+
+    for ((msgid, topicTags) <- tags.groupBy(_._1); (_, tag) <- topicTags.take(MAX_TAGS_IN_TITLE)) {
+      builder.put(msgid, tag.name)
+    }
+
+    builder.build()
+  }
 }
 
 object TopicTagService {
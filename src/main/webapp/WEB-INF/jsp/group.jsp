@@ -33,6 +33,7 @@
 <%--@elvariable id="url" type="java.lang.String"--%>
 <%--@elvariable id="groupInfo" type="ru.org.linux.group.PreparedGroupInfo"--%>
 <%--@elvariable id="hasNext" type="java.lang.Boolean"--%>
+<%--@elvariable id="nextCursor" type="ru.org.linux.topic.TopicListCursor"--%>
 <jsp:include page="/WEB-INF/jsp/head.jsp"/>
 <script type="text/javascript">
   <!--
@@ -100,7 +101,7 @@
         <img src="${groupImagePath}" ${groupImageInfo.code} alt="Группа ${group.title}" />
     </div>
 </c:if>
-<c:if test="${year == null && offset==0}">
+<c:if test="${year == null && firstPage}">
   <lor:groupinfo group="${groupInfo}"/>
 </c:if>
 <div class=forum>
@@ -208,6 +209,18 @@
 
   <a rel="prev" href="${prevUrl}">← назад</a>
 </c:if>
+<c:if test="${year == null and not firstPage}">
+  <spring:url value="${url}" var="firstUrl">
+    <c:if test="${lastmod}">
+      <spring:param name="lastmod" value="true"/>
+    </c:if>
+    <c:if test="${showIgnored}">
+      <spring:param name="showignored" value="t"/>
+    </c:if>
+  </spring:url>
+
+  <a href="${firstUrl}">← в начало</a>
+</c:if>
 </div>
 <div style="float: right">
   <c:if test="${hasNext}">
@@ -219,7 +232,12 @@
         <spring:param name="showignored" value="t"/>
       </c:if>
 
-      <spring:param name="offset" value="${nextPage}"/>
+      <c:if test="${year != null}">
+        <spring:param name="offset" value="${nextPage}"/>
+      </c:if>
+      <c:if test="${year == null}">
+        <spring:param name="cursor" value="${nextCursor}"/>
+      </c:if>
     </spring:url>
 
     <a rel="next" href="${nextUrl}">вперед →</a>
@@ -246,7 +264,7 @@
     <form action="${url}" method=POST>
         <lor:csrf/>
         <input type=hidden name=deleted value=1>
-        <input type=hidden name=offset value="${nextPage}">
+        <input type=hidden name=cursor value="${nextCursor}">
         <input type=submit value="Показать еще удаленные">
     </form>
     <hr>
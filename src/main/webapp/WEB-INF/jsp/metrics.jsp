@@ -0,0 +1,33 @@
+<%@ taglib tagdir="/WEB-INF/tags" prefix="lor" %>
+<%--
+  ~ Copyright 1998-2014 Linux.org.ru
+  ~    Licensed under the Apache License, Version 2.0 (the "License");
+  ~    you may not use this file except in compliance with the License.
+  ~    You may obtain a copy of the License at
+  ~
+  ~        http://www.apache.org/licenses/LICENSE-2.0
+  ~
+  ~    Unless required by applicable law or agreed to in writing, software
+  ~    distributed under the License is distributed on an "AS IS" BASIS,
+  ~    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  ~    See the License for the specific language governing permissions and
+  ~    limitations under the License.
+  --%>
+
+<%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<jsp:include page="/WEB-INF/jsp/head.jsp"/>
+<title>Metrics</title>
+<jsp:include page="/WEB-INF/jsp/header.jsp"/>
+
+<h1>Metrics</h1>
+
+<h2>Контроллеры, мс</h2>
+<lor:metrics-table rows="${controllers}"/>
+
+<h2>DAO, мс</h2>
+<lor:metrics-table rows="${daos}"/>
+
+<h2>SQL запросов на HTTP запрос</h2>
+<lor:metrics-table rows="${queries}"/>
+
+<jsp:include page="/WEB-INF/jsp/footer.jsp"/>
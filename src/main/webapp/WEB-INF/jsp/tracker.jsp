@@ -128,13 +128,16 @@
 <div class="nav">
   <div style="display: table; width: 100%">
     <div style="display: table-cell; text-align: left">
-      <c:if test="${offset>0}">
-        <a href="/tracker/?offset=${offset-topics}${addition_query}">← предыдущие</a>
+      <c:if test="${not firstPage and empty addition_query}">
+        <a href="/tracker/">← в начало</a>
+      </c:if>
+      <c:if test="${not firstPage and not empty addition_query}">
+        <a href="/tracker/?filter=${filter}">← в начало</a>
       </c:if>
     </div>
     <div style="display: table-cell; text-align: right">
-      <c:if test="${offset+topics<300 and fn:length(msgs)==topics}">
-        <a href="/tracker/?offset=${offset+topics}${addition_query}">следующие →</a>
+      <c:if test="${nextCursor != null}">
+        <a href="/tracker/?cursor=${nextCursor}${addition_query}">следующие →</a>
       </c:if>
     </div>
   </div>
@@ -74,6 +74,25 @@
 
 <table class="nav">
   <tr>
+  <c:choose>
+  <c:when test="${cursorNavigation}">
+    <c:if test="${not firstPage}">
+      <td width="35%" align="left">
+        <c:if test="${params!=null}">
+          <a href="${url}?${params}">← в начало</a>
+        </c:if>
+        <c:if test="${params==null}">
+          <a href="${url}">← в начало</a>
+        </c:if>
+      </td>
+    </c:if>
+    <c:if test="${nextCursor != null}">
+      <td align="right" width="35%">
+        <a href="${url}?${aparams}cursor=${nextCursor}">вперед →</a>
+      </td>
+    </c:if>
+  </c:when>
+  <c:otherwise>
     <c:if test="${offset > 20}">
       <td width="35%" align="left">
         <a href="${url}?${aparams}offset=${offset-20}">← назад</a>
@@ -94,6 +113,8 @@
         <a href="${url}?${aparams}offset=${offset+20}">вперед →</a>
       </td>
     </c:if>
+  </c:otherwise>
+  </c:choose>
   </tr>
 </table>
 
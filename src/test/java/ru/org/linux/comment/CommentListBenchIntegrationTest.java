@@ -0,0 +1,157 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.comment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Сравнение памяти, занимаемой деревом комментариев на массивах и
+ * деревом из объектов-узлов (как было устроено CommentList раньше).
+ * Сами комментарии общие для обоих вариантов, измеряются только накладные расходы.
+ *
+ * Измерение зависит от сборщика мусора, поэтому тест запускается вместе
+ * с интеграционными, а не при каждой сборке.
+ */
+public class CommentListBenchIntegrationTest {
+  private static final int THREAD_SIZE = 2000;
+  private static final int COPIES = 200;
+
+  private static ImmutableList<Comment> makeThread() {
+    Random random = new Random(1);
+    List<Comment> comments = new ArrayList<>(THREAD_SIZE);
+
+    for (int i=1; i<=THREAD_SIZE; i++) {
+      int replyto = i>1 && random.nextBoolean() ? random.nextInt(i-1)+1 : 0;
+
+      comments.add(new Comment(replyto, "", 1, i, 1, "127.0.0.1"));
+    }
+
+    return ImmutableList.copyOf(comments);
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+
+    for (int i=0; i<3; i++) {
+      System.gc();
+    }
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  @Test
+  public void memory() {
+    ImmutableList<Comment> thread = makeThread();
+
+    long start = usedMemory();
+
+    List<CommentList> compact = new ArrayList<>(COPIES);
+    for (int i=0; i<COPIES; i++) {
+      compact.add(new CommentList(thread, 0));
+    }
+
+    long compactSize = usedMemory() - start;
+
+    start = usedMemory();
+
+    List<LegacyTree> legacy = new ArrayList<>(COPIES);
+    for (int i=0; i<COPIES; i++) {
+      legacy.add(new LegacyTree(thread));
+    }
+
+    long legacySize = usedMemory() - start;
+
+    assertTrue(
+            "arrays " + compactSize / COPIES + " bytes, object tree " + legacySize / COPIES + " bytes",
+            compact.size() == COPIES && legacy.size() == COPIES && compactSize < legacySize
+    );
+  }
+
+  /**
+   * Дерево из объектов-узлов с индексом по id
+   */
+  private static class LegacyTree {
+    private final LegacyNode root;
+    private final ImmutableMap<Integer, LegacyNode> index;
+
+    private LegacyTree(List<Comment> comments) {
+      Map<Integer, List<Comment>> childs = new HashMap<>();
+      Set<Integer> known = new HashSet<>();
+      List<Comment> top = new ArrayList<>();
+
+      for (Comment comment : comments) {
+        known.add(comment.getId());
+
+        if (comment.getReplyTo()!=0 && known.contains(comment.getReplyTo())) {
+          List<Comment> list = childs.get(comment.getReplyTo());
+
+          if (list==null) {
+            list = new LinkedList<>();
+            childs.put(comment.getReplyTo(), list);
+          }
+
+          list.add(comment);
+        } else {
+          top.add(comment);
+        }
+      }
+
+      root = build(null, top, childs);
+
+      ImmutableMap.Builder<Integer, LegacyNode> builder = ImmutableMap.builder();
+      buildIndex(builder, root);
+      index = builder.build();
+    }
+
+    private static LegacyNode build(Comment comment, List<Comment> list, Map<Integer, List<Comment>> childs) {
+      List<LegacyNode> nodes = new ArrayList<>(list.size());
+
+      for (Comment child : list) {
+        List<Comment> replys = childs.get(child.getId());
+
+        nodes.add(build(child, replys!=null ? replys : ImmutableList.<Comment>of(), childs));
+      }
+
+      return new LegacyNode(comment, nodes);
+    }
+
+    private static void buildIndex(ImmutableMap.Builder<Integer, LegacyNode> builder, LegacyNode node) {
+      if (node.comment!=null) {
+        builder.put(node.comment.getId(), node);
+      }
+
+      for (LegacyNode child : node.childs) {
+        buildIndex(builder, child);
+      }
+    }
+  }
+
+  private static class LegacyNode {
+    private final Comment comment;
+    private final ImmutableList<LegacyNode> childs;
+
+    private LegacyNode(Comment comment, List<LegacyNode> childs) {
+      this.comment = comment;
+      this.childs = ImmutableList.copyOf(childs);
+    }
+  }
+}
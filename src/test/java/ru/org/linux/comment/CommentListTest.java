@@ -0,0 +1,103 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.comment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class CommentListTest {
+  private static Comment comment(int msgid, int replyto) {
+    return new Comment(replyto, "", 1, msgid, 1, "127.0.0.1");
+  }
+
+  @Test
+  public void indexOfSorted() {
+    CommentList list = new CommentList(ImmutableList.of(comment(10, 0), comment(20, 10), comment(30, 0)), 0);
+
+    assertEquals(0, list.indexOf(10));
+    assertEquals(1, list.indexOf(20));
+    assertEquals(2, list.indexOf(30));
+    assertEquals(-1, list.indexOf(15));
+  }
+
+  @Test
+  public void indexOfUnsorted() {
+    CommentList list = new CommentList(ImmutableList.of(comment(30, 0), comment(10, 0), comment(20, 10)), 0);
+
+    assertEquals(1, list.indexOf(10));
+    assertEquals(2, list.indexOf(20));
+    assertEquals(0, list.indexOf(30));
+    assertEquals(-1, list.indexOf(40));
+  }
+
+  @Test
+  public void indexOfEmpty() {
+    CommentList list = new CommentList(ImmutableList.<Comment>of(), 0);
+
+    assertEquals(-1, list.indexOf(10));
+  }
+
+  @Test
+  public void tree() {
+    CommentList list = new CommentList(ImmutableList.of(
+            comment(1, 0),
+            comment(2, 1),
+            comment(3, 0),
+            comment(4, 1),
+            comment(5, 2),
+            comment(6, 100)
+    ), 0);
+
+    CommentNode root = list.getRoot();
+
+    assertNull(root.getComment());
+    assertEquals(3, root.childs().size());
+    assertEquals(1, root.childs().get(0).getComment().getId());
+    assertEquals(3, root.childs().get(1).getComment().getId());
+    assertEquals(6, root.childs().get(2).getComment().getId());
+
+    CommentNode first = list.getNode(1);
+
+    assertEquals(0, first.getDepth());
+    assertEquals(2, first.childs().size());
+    assertEquals(2, first.childs().get(0).getComment().getId());
+    assertEquals(4, first.childs().get(1).getComment().getId());
+    assertEquals(2, list.getNode(5).getDepth());
+
+    assertTrue(list.getNode(2).isHaveAnswers());
+    assertFalse(list.getNode(3).isHaveAnswers());
+    assertNull(list.getNode(100));
+
+    List<Comment> subtree = new ArrayList<>();
+    first.buildList(subtree);
+
+    assertEquals(4, subtree.size());
+    assertEquals(5, subtree.get(2).getId());
+
+    Set<Integer> hideSet = new HashSet<>();
+    list.getNode(2).hideNode(hideSet);
+
+    assertEquals(ImmutableSet.of(2, 5), hideSet);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SearchQueryValidatorTest {
+  @Test
+  public void valid() {
+    SearchQueryValidator validator = new SearchQueryValidator();
+
+    assertTrue(validator.isValid("linux"));
+    assertTrue(validator.isValid("linux AND (debian OR ubuntu)"));
+    assertTrue(validator.isValid("\"точная фраза\""));
+    assertTrue(validator.isValid("title:kernel -windows"));
+    assertTrue(validator.isValid("*box"));
+    assertTrue(validator.isValid("a\\[b\\]"));
+  }
+
+  @Test
+  public void invalid() {
+    SearchQueryValidator validator = new SearchQueryValidator();
+
+    assertFalse(validator.isValid("linux AND"));
+    assertFalse(validator.isValid("(debian"));
+    assertFalse(validator.isValid("\"open quote"));
+    assertFalse(validator.isValid("c++ OR"));
+  }
+
+  @Test
+  public void cached() {
+    SearchQueryValidator validator = new SearchQueryValidator();
+
+    assertTrue(validator.isValid("linux"));
+    assertTrue(validator.isValid("linux"));
+
+    assertEquals(1, validator.getHitCount());
+    assertEquals(1, validator.getSize());
+
+    validator.markInvalid("linux");
+
+    assertFalse(validator.isValid("linux"));
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+
+import javax.jms.Destination;
+import javax.jms.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SearchQueueSenderTest {
+  private JmsTemplate jmsTemplate;
+  private SearchQueueSender sender;
+
+  @Before
+  public void setUp() {
+    jmsTemplate = mock(JmsTemplate.class);
+
+    sender = new SearchQueueSender();
+    sender.setJmsTemplate(jmsTemplate);
+    sender.setQueue(mock(Queue.class));
+  }
+
+  @Test
+  public void failedBatchIsRequeued() {
+    doThrow(new UncategorizedJmsException("broker is down"))
+            .doNothing()
+            .when(jmsTemplate).send(any(Destination.class), any(MessageCreator.class));
+
+    sender.updateMessage(1, true);
+    sender.updateMessageOnly(2);
+    sender.updateComment(3);
+
+    sender.flush();
+
+    assertEquals(1, sender.getFailedCount());
+    assertEquals(0, sender.getSentCount());
+
+    sender.flush();
+
+    assertEquals(1, sender.getFailedCount());
+    assertEquals(3, sender.getSentCount());
+    assertEquals(1, sender.getBatchCount());
+
+    sender.flush();
+
+    verify(jmsTemplate, times(2)).send(any(Destination.class), any(MessageCreator.class));
+  }
+}
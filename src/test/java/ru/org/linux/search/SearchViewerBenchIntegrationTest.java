@@ -0,0 +1,157 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.node.Node;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.elasticsearch.index.query.QueryBuilders.queryString;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Локальная проверка запроса совпадает с проверкой через Elasticsearch
+ * (validate query, как было раньше), а поиск с локальной проверкой
+ * выполняется без ошибок.
+ */
+public class SearchViewerBenchIntegrationTest {
+  private static final int DOCUMENTS = 2000;
+
+  private static final List<String> QUERIES = ImmutableList.of(
+          "linux",
+          "ядро AND модуль",
+          "debian OR ubuntu",
+          "\"сборка ядра\"",
+          "title:kernel -windows",
+          "c++ (",
+          "linux AND"
+  );
+
+  private static final List<String> WORDS = ImmutableList.of(
+          "linux", "ядро", "модуль", "debian", "ubuntu", "сборка", "kernel", "windows", "драйвер", "gentoo"
+  );
+
+  private static File dataDir;
+  private static Node node;
+  private static Client client;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    dataDir = Files.createTempDirectory("search-bench").toFile();
+
+    node = nodeBuilder()
+            .local(true)
+            .settings(ImmutableSettings.settingsBuilder().put("path.data", dataDir.getAbsolutePath()))
+            .node();
+
+    client = node.client();
+
+    String mappingSource = IOUtils.toString(SearchViewerBenchIntegrationTest.class.getClassLoader().getResource("es-mapping.json"));
+
+    client.admin().indices().prepareCreate(SearchQueueListener.MESSAGES_INDEX).setSource(mappingSource).execute().actionGet();
+    client.admin().cluster().prepareHealth(SearchQueueListener.MESSAGES_INDEX).setWaitForYellowStatus().execute().actionGet();
+
+    Random random = new Random(1);
+    BulkRequestBuilder bulk = client.prepareBulk();
+
+    for (int i=1; i<=DOCUMENTS; i++) {
+      Map<String, Object> doc = new HashMap<>();
+
+      StringBuilder message = new StringBuilder();
+      for (int j=0; j<50; j++) {
+        message.append(WORDS.get(random.nextInt(WORDS.size()))).append(' ');
+      }
+
+      doc.put("section", "forum");
+      doc.put("topic_author", "maxcom");
+      doc.put("topic_id", i);
+      doc.put("author", "maxcom");
+      doc.put("group", "general");
+      doc.put("title", WORDS.get(random.nextInt(WORDS.size())));
+      doc.put("topic_title", WORDS.get(random.nextInt(WORDS.size())));
+      doc.put("message", message.toString());
+      doc.put("postdate", new Timestamp(System.currentTimeMillis() - random.nextInt(Integer.MAX_VALUE)));
+      doc.put("is_comment", i % 2 == 0);
+
+      bulk.add(client.prepareIndex(SearchQueueListener.MESSAGES_INDEX, SearchQueueListener.MESSAGES_TYPE, Integer.toString(i)).setSource(doc));
+    }
+
+    assertFalse(bulk.execute().actionGet().hasFailures());
+
+    client.admin().indices().prepareRefresh(SearchQueueListener.MESSAGES_INDEX).execute().actionGet();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    client.close();
+    node.close();
+    FileUtils.deleteDirectory(dataDir);
+  }
+
+  private static SearchRequest request(String q) {
+    SearchRequest request = new SearchRequest();
+    request.setQ(q);
+    return request;
+  }
+
+  private static boolean validateRemote(String q) {
+    return client
+            .admin()
+            .indices()
+            .prepareValidateQuery(SearchQueueListener.MESSAGES_INDEX)
+            .setTypes(SearchQueueListener.MESSAGES_TYPE)
+            .setQuery(queryString(q).lenient(true).minimumShouldMatch("50%"))
+            .execute()
+            .actionGet()
+            .isValid();
+  }
+
+  @Test
+  public void compare() {
+    SearchQueryValidator validator = new SearchQueryValidator();
+
+    for (String q : QUERIES) {
+      assertEquals(q, validateRemote(q), SearchQueryValidator.parse(q));
+
+      // неверный запрос выполняется как поиск фразы, а не падает в Elasticsearch
+      assertEquals(q, 0, new SearchViewer(request(q), validator).performSearch(client).getFailedShards());
+    }
+
+    for (String q : QUERIES) {
+      new SearchViewer(request(q), validator).performSearch(client);
+    }
+
+    assertTrue(validator.getHitCount() > 0);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.spring;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import org.apache.commons.httpclient.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+import ru.org.linux.monitoring.SqlQueryInterceptor;
+import ru.org.linux.test.WebHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Число SQL запросов на ключевых страницах. Требует системного свойства
+ * SqlQueryHeader=true, оно задано в конфигурации jetty-maven-plugin.
+ *
+ * Рост числа запросов обычно означает новый N+1; если рост оправдан,
+ * бюджет нужно поднять вместе с изменением.
+ *
+ * Каждый запрос получает уникальный параметр, чтобы страница не была
+ * отдана из PageCache без обращения к базе.
+ */
+public class QueryBudgetWebTest {
+  private WebResource resource;
+
+  @Before
+  public void initResource() throws Exception {
+    Client client = new Client();
+    client.setFollowRedirects(false);
+    resource = client.resource(WebHelper.MAIN_URL);
+  }
+
+  private void assertBudget(String path, int budget) {
+    ClientResponse cr = resource
+        .path(path)
+        .queryParam("nocache", Long.toString(System.nanoTime()))
+        .get(ClientResponse.class);
+
+    assertEquals(HttpStatus.SC_OK, cr.getStatus());
+
+    String header = cr.getHeaders().getFirst(SqlQueryInterceptor.HEADER());
+    assertNotNull("no " + SqlQueryInterceptor.HEADER() + " header", header);
+
+    int queries = Integer.parseInt(header);
+    assertTrue(path + ": " + queries + " queries, budget " + budget, queries <= budget);
+  }
+
+  @Test
+  public void testMain() {
+    assertBudget("/", 40);
+  }
+
+  @Test
+  public void testTracker() {
+    assertBudget("/tracker/", 30);
+  }
+
+  @Test
+  public void testForumGroup() {
+    assertBudget("/forum/talks/", 30);
+  }
+
+  @Test
+  public void testNewsArchive() {
+    assertBudget("/news/archive/2007/5", 40);
+  }
+
+  @Test
+  public void testProfile() {
+    assertBudget("/people/maxcom/profile", 30);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.spring.boxlets;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class BoxletCacheTest {
+  private final BoxletCache cache = new BoxletCache();
+
+  @After
+  public void tearDown() {
+    cache.shutdown();
+  }
+
+  private static Callable<Integer> counter(final AtomicInteger calls) {
+    return new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return calls.incrementAndGet();
+      }
+    };
+  }
+
+  private void waitForRefreshes(long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+
+    while (cache.getRefreshCount() + cache.getRefreshFailureCount() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void freshValueIsCached() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertEquals(1, (int) cache.get("test", "", 60000, counter(calls)));
+    assertEquals(1, (int) cache.get("test", "", 60000, counter(calls)));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void keysAreSeparate() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertEquals(1, (int) cache.get("test", 25, 60000, counter(calls)));
+    assertEquals(2, (int) cache.get("test", 50, 60000, counter(calls)));
+    assertEquals(3, (int) cache.get("other", 25, 60000, counter(calls)));
+  }
+
+  @Test
+  public void staleValueServedWhileRefreshing() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertEquals(1, (int) cache.get("test", "", -1, counter(calls)));
+
+    // устаревшее значение отдается сразу, обновление идет в фоне
+    assertEquals(1, (int) cache.get("test", "", -1, counter(calls)));
+
+    waitForRefreshes(1);
+
+    assertEquals(2, (int) cache.get("test", "", -1, counter(calls)));
+  }
+
+  @Test
+  public void failedRefreshKeepsValue() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+
+    Callable<Integer> failing = new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        if (calls.incrementAndGet() > 1) {
+          throw new Exception("database is down");
+        }
+
+        return 1;
+      }
+    };
+
+    assertEquals(1, (int) cache.get("test", "", -1, failing));
+    assertEquals(1, (int) cache.get("test", "", -1, failing));
+
+    waitForRefreshes(1);
+
+    assertEquals(1, cache.getRefreshFailureCount());
+    assertEquals(1, (int) cache.get("test", "", -1, failing));
+  }
+}
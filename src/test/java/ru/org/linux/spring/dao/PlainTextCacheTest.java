@@ -0,0 +1,62 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.spring.dao;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PlainTextCacheTest {
+  @Test
+  public void sameVersion() {
+    PlainTextCache cache = new PlainTextCache();
+
+    cache.put(1, new MessageText("[b]text[/b]", true), "text");
+
+    assertEquals("text", cache.get(1, new MessageText("[b]text[/b]", true)));
+  }
+
+  @Test
+  public void changedText() {
+    PlainTextCache cache = new PlainTextCache();
+
+    cache.put(1, new MessageText("[b]text[/b]", true), "text");
+
+    assertNull(cache.get(1, new MessageText("[b]text[/b] edited", true)));
+    assertNull(cache.get(1, new MessageText("[b]text[/b]", false)));
+  }
+
+  @Test
+  public void sameHashDifferentText() {
+    PlainTextCache cache = new PlainTextCache();
+
+    // "Aa".hashCode() == "BB".hashCode()
+    cache.put(1, new MessageText("Aa", true), "Aa");
+
+    assertNull(cache.get(1, new MessageText("BB", true)));
+  }
+
+  @Test
+  public void invalidate() {
+    PlainTextCache cache = new PlainTextCache();
+
+    cache.put(1, new MessageText("text", true), "text");
+    cache.invalidate(1);
+
+    assertNull(cache.get(1, new MessageText("text", true)));
+  }
+}
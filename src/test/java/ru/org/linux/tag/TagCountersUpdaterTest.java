@@ -0,0 +1,81 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tag;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.org.linux.topic.TopicTagDao;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class TagCountersUpdaterTest {
+  private TopicTagDao topicTagDao;
+  private TagCountersUpdater updater;
+
+  @Before
+  public void setUp() {
+    topicTagDao = mock(TopicTagDao.class);
+    updater = new TagCountersUpdater();
+    ReflectionTestUtils.setField(updater, "topicTagDao", topicTagDao);
+  }
+
+  @Test
+  public void fullBatchContinuesFromLastId() {
+    ImmutableList.Builder<Integer> ids = ImmutableList.builder();
+
+    for (int i = 1; i <= 500; i++) {
+      ids.add(i * 2);
+    }
+
+    when(topicTagDao.getTagIdsAfter(0, 500)).thenReturn(ids.build());
+    when(topicTagDao.repairCounters(0, 1000)).thenReturn(ImmutableList.of(10, 20));
+
+    updater.checkTagsCounters();
+
+    assertEquals(1000, updater.getLastCheckedId());
+    assertEquals(500, updater.getCheckedCount());
+    assertEquals(2, updater.getRepairedCount());
+  }
+
+  @Test
+  public void lastBatchStartsOver() {
+    ReflectionTestUtils.setField(updater, "lastCheckedId", 1000);
+
+    when(topicTagDao.getTagIdsAfter(1000, 500)).thenReturn(ImmutableList.of(1001, 1005));
+    when(topicTagDao.repairCounters(1000, 1005)).thenReturn(ImmutableList.<Integer>of());
+
+    updater.checkTagsCounters();
+
+    verify(topicTagDao).repairCounters(1000, 1005);
+    assertEquals(0, updater.getLastCheckedId());
+    assertEquals(0, updater.getRepairedCount());
+  }
+
+  @Test
+  public void emptyBatchStartsOver() {
+    ReflectionTestUtils.setField(updater, "lastCheckedId", 2000);
+
+    when(topicTagDao.getTagIdsAfter(2000, 500)).thenReturn(ImmutableList.<Integer>of());
+
+    updater.checkTagsCounters();
+
+    verify(topicTagDao, never()).repairCounters(anyInt(), anyInt());
+    assertEquals(0, updater.getLastCheckedId());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.org.linux.group.Group;
+import ru.org.linux.group.GroupDao;
+import ru.org.linux.pagecache.PageCache;
+import ru.org.linux.section.Section;
+import ru.org.linux.user.Profile;
+import ru.org.linux.user.User;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class MainPageFeedTest {
+  private static final int NEWS_GROUP = 2;
+
+  private TopicDao topicDao;
+  private TopicService topicService;
+  private MainPageFeed feed;
+
+  @Before
+  public void setUp() {
+    Group group = mock(Group.class);
+    when(group.getSectionId()).thenReturn(Section.SECTION_NEWS);
+
+    GroupDao groupDao = mock(GroupDao.class);
+    when(groupDao.getGroup(NEWS_GROUP)).thenReturn(group);
+
+    PageCache pageCache = new PageCache();
+    ReflectionTestUtils.setField(pageCache, "groupDao", groupDao);
+
+    topicDao = mock(TopicDao.class);
+
+    topicService = new TopicService();
+    ReflectionTestUtils.setField(topicService, "topicDao", topicDao);
+    ReflectionTestUtils.setField(topicService, "pageCache", pageCache);
+
+    feed = new MainPageFeed();
+    ReflectionTestUtils.setField(feed, "topicListService", mock(TopicListService.class));
+    ReflectionTestUtils.setField(feed, "prepareService", mock(TopicPrepareService.class));
+    ReflectionTestUtils.setField(feed, "pageCache", pageCache);
+  }
+
+  private void getFeed() {
+    feed.getFeed(false, false, false, null, Profile.createDefault());
+  }
+
+  private boolean edit(boolean modified) {
+    Topic topic = mock(Topic.class);
+    when(topic.getGroupId()).thenReturn(NEWS_GROUP);
+    when(topic.isExpired()).thenReturn(true);
+
+    User user = mock(User.class);
+    List<String> tags = ImmutableList.of();
+
+    when(topicDao.updateMessage(topic, topic, user, tags, "text")).thenReturn(modified);
+
+    return topicService.updateAndCommit(
+            topic, topic, user, tags, "text", false, null, 0, null, false, null
+    );
+  }
+
+  @Test
+  public void editRebuildsFeed() {
+    getFeed();
+    getFeed();
+
+    assertEquals(1, feed.getRebuildCount());
+
+    assertEquals(true, edit(true));
+
+    getFeed();
+
+    assertEquals(2, feed.getRebuildCount());
+  }
+
+  @Test
+  public void unmodifiedEditKeepsFeed() {
+    getFeed();
+
+    assertEquals(false, edit(false));
+
+    getFeed();
+
+    assertEquals(1, feed.getRebuildCount());
+  }
+}
@@ -33,6 +33,7 @@ import static org.mockito.Mockito.mock;
                                 SearchQueueSender.class,
                                 FeedPinger.class,
                                 TopicListService.class,
+                                MainPageFeed.class,
                         }
                 )
         }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.org.linux.group.Group;
+import ru.org.linux.group.GroupDao;
+import ru.org.linux.section.Section;
+import ru.org.linux.section.SectionService;
+import ru.org.linux.tag.TagService;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Выборки TopicListService.getTopicsFeed с пулом подготовленных запросов
+ * из database.xml совпадают с выборками без подготовленных на сервере
+ * запросов (как было, когда значения подставлялись в текст SQL).
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TopicListBenchIntegrationTestConfiguration.class)
+public class TopicListBenchIntegrationTest {
+  @Autowired
+  private TopicListService pooledService;
+
+  @Autowired
+  private TagService tagService;
+
+  @Autowired
+  private SectionService sectionService;
+
+  @Autowired
+  private GroupDao groupDao;
+
+  @Autowired
+  private DataSource datasource;
+
+  private BasicDataSource unpreparedDataSource;
+  private TopicListService unpreparedService;
+
+  private Section news;
+  private Section forum;
+  private Section gallery;
+  private Group general;
+  private String tag;
+
+  @Before
+  public void setUp() throws Exception {
+    BasicDataSource pooled = (BasicDataSource) datasource;
+
+    unpreparedDataSource = new BasicDataSource();
+    unpreparedDataSource.setDriverClassName(pooled.getDriverClassName());
+    unpreparedDataSource.setUrl(pooled.getUrl() + "?prepareThreshold=0");
+    unpreparedDataSource.setUsername(pooled.getUsername());
+    unpreparedDataSource.setPassword(pooled.getPassword());
+
+    TopicListDao unpreparedDao = new TopicListDao();
+    unpreparedDao.setDataSource(unpreparedDataSource);
+
+    unpreparedService = new TopicListService();
+    ReflectionTestUtils.setField(unpreparedService, "topicListDao", unpreparedDao);
+    ReflectionTestUtils.setField(unpreparedService, "tagService", tagService);
+
+    news = sectionService.getSection(Section.SECTION_NEWS);
+    forum = sectionService.getSection(Section.SECTION_FORUM);
+    gallery = sectionService.getSection(Section.SECTION_GALLERY);
+    general = groupDao.getGroup(forum, "general");
+
+    tag = new JdbcTemplate(datasource).queryForObject(
+            "SELECT value FROM tags_values ORDER BY counter DESC LIMIT 1",
+            String.class
+    );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    unpreparedDataSource.close();
+  }
+
+  /**
+   * Варианты выборки, как их делают TopicListController, GroupController и TagTopicListController
+   */
+  private List<List<Topic>> feeds(TopicListService service) throws Exception {
+    List<List<Topic>> result = new ArrayList<>();
+
+    for (int offset = 0; offset < 100; offset += 20) {
+      result.add(service.getTopicsFeed(news, null, null, offset, null, null, 20));
+      result.add(service.getTopicsFeed(forum, null, null, offset, null, null, 30));
+      result.add(service.getTopicsFeed(gallery, null, null, offset, null, null, 20));
+      result.add(service.getTopicsFeed(forum, general, null, offset, null, null, 30));
+      result.add(service.getTopicsFeed(news, null, tag, offset, null, null, 20));
+    }
+
+    for (int month = 1; month <= 12; month++) {
+      result.add(service.getTopicsFeed(news, null, null, 0, 2007, month, 20));
+    }
+
+    return result;
+  }
+
+  private static List<List<Integer>> ids(List<List<Topic>> feeds) {
+    List<List<Integer>> result = new ArrayList<>();
+
+    for (List<Topic> feed : feeds) {
+      List<Integer> ids = new ArrayList<>();
+
+      for (Topic topic : feed) {
+        ids.add(topic.getId());
+      }
+
+      result.add(ids);
+    }
+
+    return result;
+  }
+
+  @Test
+  public void compare() throws Exception {
+    // второй проход идет уже через подготовленные на сервере запросы
+    List<List<Integer>> expected = ids(feeds(unpreparedService));
+
+    assertEquals(expected, ids(feeds(pooledService)));
+    assertEquals(expected, ids(feeds(pooledService)));
+  }
+}
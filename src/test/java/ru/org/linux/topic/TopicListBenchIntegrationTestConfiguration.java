@@ -0,0 +1,67 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportResource;
+import ru.org.linux.group.GroupDao;
+import ru.org.linux.section.SectionDao;
+import ru.org.linux.section.SectionDaoImpl;
+import ru.org.linux.section.SectionService;
+import ru.org.linux.tag.TagDao;
+import ru.org.linux.tag.TagService;
+
+import javax.sql.DataSource;
+
+@Configuration
+@ImportResource("classpath:database.xml")
+public class TopicListBenchIntegrationTestConfiguration {
+  @Bean
+  public TopicListDao topicListDao() {
+    return new TopicListDao();
+  }
+
+  @Bean
+  public TopicListService topicListService() {
+    return new TopicListService();
+  }
+
+  @Bean
+  public SectionDao sectionDao() {
+    return new SectionDaoImpl();
+  }
+
+  @Bean
+  public SectionService sectionService() {
+    return new SectionService();
+  }
+
+  @Bean
+  public GroupDao groupDao() {
+    return new GroupDao();
+  }
+
+  @Bean
+  public TagDao tagDao(DataSource datasource) {
+    return new TagDao(datasource);
+  }
+
+  @Bean
+  public TagService tagService(TagDao tagDao) {
+    return new TagService(tagDao);
+  }
+}
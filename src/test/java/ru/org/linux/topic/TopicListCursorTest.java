@@ -0,0 +1,67 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import org.junit.Test;
+import ru.org.linux.util.ServletParameterBadValueException;
+
+import java.sql.Timestamp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TopicListCursorTest {
+  @Test
+  public void roundTrip() throws Exception {
+    Timestamp time = new Timestamp(1400000000123L);
+    time.setNanos(123456000);
+
+    TopicListCursor cursor = TopicListCursor.of(time, 10096541);
+    TopicListCursor parsed = TopicListCursor.parse(cursor.toString());
+
+    assertEquals(cursor, parsed);
+    assertEquals(time, parsed.getTime());
+    assertEquals(10096541, parsed.getId());
+  }
+
+  @Test
+  public void negativeId() throws Exception {
+    TopicListCursor cursor = TopicListCursor.of(new Timestamp(1400000000000L), -1234);
+
+    assertEquals(cursor, TopicListCursor.parse(cursor.toString()));
+  }
+
+  @Test
+  public void empty() throws Exception {
+    assertNull(TopicListCursor.parse(null));
+    assertNull(TopicListCursor.parse(""));
+  }
+
+  @Test(expected = ServletParameterBadValueException.class)
+  public void noSeparator() throws Exception {
+    TopicListCursor.parse("abc");
+  }
+
+  @Test(expected = ServletParameterBadValueException.class)
+  public void garbage() throws Exception {
+    TopicListCursor.parse("zz!.1");
+  }
+
+  @Test(expected = ServletParameterBadValueException.class)
+  public void negative() throws Exception {
+    TopicListCursor.parse("-1.1");
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tracker;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class LastCommentBackfillTest {
+  private JdbcTemplate jdbcTemplate;
+  private LastCommentBackfill backfill;
+
+  @Before
+  public void setUp() {
+    jdbcTemplate = mock(JdbcTemplate.class);
+    backfill = new LastCommentBackfill();
+    ReflectionTestUtils.setField(backfill, "jdbcTemplate", jdbcTemplate);
+  }
+
+  @Test
+  public void nothingToUpdate() {
+    when(jdbcTemplate.queryForList(anyString(), eq(Integer.class))).thenReturn(ImmutableList.<Integer>of());
+
+    backfill.backfillStep();
+    backfill.backfillStep();
+
+    assertTrue(backfill.isFinished());
+    verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(Integer.class));
+    verifyNoMoreInteractions(jdbcTemplate);
+  }
+
+  @Test
+  public void startsFromLastUnfilledTopic() {
+    when(jdbcTemplate.queryForList(anyString(), eq(Integer.class))).thenReturn(ImmutableList.of(30000));
+
+    backfill.backfillStep();
+
+    verify(jdbcTemplate).update(anyString(), eq(10000), eq(30000));
+    assertEquals(10000, backfill.getPosition());
+
+    backfill.backfillAll();
+
+    verify(jdbcTemplate).update(anyString(), eq(0), eq(10000));
+    assertTrue(backfill.isFinished());
+  }
+}
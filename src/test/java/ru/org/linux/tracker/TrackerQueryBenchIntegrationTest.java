@@ -0,0 +1,77 @@
+/*
+ * Copyright 1998-2014 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tracker;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Выборка трекера через указатель на последний комментарий в topics
+ * совпадает с выборкой через коррелированный подзапрос (как было раньше).
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TrackerQueryBenchIntegrationTestConfiguration.class)
+@Transactional
+public class TrackerQueryBenchIntegrationTest {
+  // id добавлен в сортировку, чтобы комментарии с одинаковым временем выбирались так же, как в указателе
+  private static final String legacyQuery =
+          "SELECT t.id, comments.id as cid, comments.userid AS last_comment_by " +
+                  "FROM topics AS t, groups AS g, comments, sections " +
+                  "WHERE g.section=sections.id AND not t.deleted AND not t.draft AND t.id=comments.topic AND t.groupid=g.id " +
+                  "AND comments.id=(SELECT id FROM comments WHERE NOT deleted AND comments.topic=t.id ORDER BY postdate DESC, id DESC LIMIT 1) " +
+                  "ORDER BY lastmod DESC, t.id LIMIT 100";
+
+  private static final String pointerQuery =
+          "SELECT t.id, t.last_comment_id as cid, t.last_comment_by AS last_comment_by " +
+                  "FROM topics AS t, groups AS g, sections " +
+                  "WHERE g.section=sections.id AND not t.deleted AND not t.draft AND t.groupid=g.id " +
+                  "AND t.last_comment_id IS NOT NULL " +
+                  "ORDER BY lastmod DESC, t.id LIMIT 100";
+
+  @Autowired
+  private LastCommentBackfill backfill;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public void setDataSource(DataSource ds) {
+    jdbcTemplate = new JdbcTemplate(ds);
+  }
+
+  @Test
+  public void compare() {
+    backfill.restart();
+    backfill.backfillAll();
+
+    List<Map<String, Object>> legacy = jdbcTemplate.queryForList(legacyQuery);
+    List<Map<String, Object>> pointer = jdbcTemplate.queryForList(pointerQuery);
+
+    assertFalse(pointer.isEmpty());
+    assertEquals(legacy, pointer);
+  }
+}
@@ -0,0 +1,14 @@
+package ru.org.linux.tracker;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportResource;
+
+@Configuration
+@ImportResource("classpath:database.xml")
+public class TrackerQueryBenchIntegrationTestConfiguration {
+  @Bean
+  public LastCommentBackfill lastCommentBackfill() {
+    return new LastCommentBackfill();
+  }
+}
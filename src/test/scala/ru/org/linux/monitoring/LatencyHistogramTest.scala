@@ -0,0 +1,53 @@
+package ru.org.linux.monitoring
+
+import org.junit.runner.RunWith
+import org.scalatest.FunSuite
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class LatencyHistogramTest extends FunSuite {
+  test("buckets cover values without gaps") {
+    for (value <- (0L to 5000L) ++ Seq(1L << 20, (1L << 30) + 12345, 1L << 40, Long.MaxValue)) {
+      val index = LatencyHistogram.bucket(value)
+
+      assert(index >= 0 && index < LatencyHistogram.BucketCount)
+      assert(LatencyHistogram.lowerBound(index) <= value)
+      assert(value <= LatencyHistogram.upperBound(index))
+    }
+  }
+
+  test("small values are exact") {
+    for (value <- 0L until 32L) {
+      val index = LatencyHistogram.bucket(value)
+      assert(LatencyHistogram.lowerBound(index) === value)
+      assert(LatencyHistogram.upperBound(index) === value)
+    }
+  }
+
+  test("empty histogram") {
+    val histogram = new LatencyHistogram
+
+    assert(histogram.count === 0)
+    assert(histogram.percentile(0.99) === 0)
+  }
+
+  test("percentiles within bucket precision") {
+    val histogram = new LatencyHistogram
+
+    for (value <- 1 to 10000) {
+      histogram.record(value)
+    }
+
+    assert(histogram.count === 10000)
+    assert(histogram.max === 10000)
+
+    for ((q, expected) <- Seq(0.5 -> 5000, 0.95 -> 9500, 0.99 -> 9900)) {
+      val value = histogram.percentile(q)
+
+      assert(value >= expected, s"p$q=$value")
+      assert(value <= expected * 17 / 16, s"p$q=$value")
+    }
+
+    assert(histogram.percentile(1.0) === 10000)
+  }
+}
@@ -0,0 +1,70 @@
+package ru.org.linux.monitoring
+
+import java.sql.{Connection, PreparedStatement, Statement}
+import javax.sql.DataSource
+
+import org.junit.runner.RunWith
+import org.mockito.Mockito._
+import org.scalatest.FunSuite
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class QueryCountingDataSourceTest extends FunSuite {
+  private def dataSource(): DataSource = {
+    val connection = mock(classOf[Connection])
+    when(connection.createStatement()).thenReturn(mock(classOf[Statement]))
+    when(connection.prepareStatement("SELECT 1")).thenReturn(mock(classOf[PreparedStatement]))
+
+    val target = mock(classOf[DataSource])
+    when(target.getConnection()).thenReturn(connection)
+
+    new QueryCountingDataSource(target)
+  }
+
+  test("counts statements between start and stop") {
+    val connection = dataSource().getConnection()
+
+    QueryCounter.start()
+
+    try {
+      connection.createStatement().executeQuery("SELECT * FROM users WHERE id=5")
+      connection.prepareStatement("SELECT 1")
+      connection.getAutoCommit
+
+      assert(QueryCounter.count === 2)
+    } finally {
+      QueryCounter.stop()
+    }
+
+    connection.prepareStatement("SELECT 1")
+
+    assert(QueryCounter.count === 0)
+  }
+
+  test("groups statements by shape") {
+    val connection = dataSource().getConnection()
+
+    QueryCounter.start()
+
+    try {
+      val statement = connection.createStatement()
+
+      for (id <- 1 to 12) {
+        statement.executeQuery(s"SELECT * FROM users WHERE id=$id")
+      }
+
+      connection.prepareStatement("SELECT 1")
+
+      assert(QueryCounter.count === 13)
+      assert(QueryCounter.repeated(10) === Map("SELECT * FROM users WHERE id=?" -> 12))
+    } finally {
+      QueryCounter.stop()
+    }
+  }
+
+  test("delegates to target connection") {
+    val ds = dataSource()
+
+    assert(ds.getConnection().prepareStatement("SELECT 1") != null)
+  }
+}
@@ -0,0 +1,22 @@
+package ru.org.linux.monitoring
+
+import org.junit.runner.RunWith
+import org.scalatest.FunSuite
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class SqlShapeTest extends FunSuite {
+  test("literals are replaced") {
+    assert(SqlShape.normalize("SELECT * FROM users WHERE id=5 AND nick='it''s'") ===
+      "SELECT * FROM users WHERE id=? AND nick=?")
+  }
+
+  test("parameter lists are collapsed") {
+    assert(SqlShape.normalize("SELECT * FROM tags WHERE msgid IN (?, ?,?)") ===
+      SqlShape.normalize("SELECT * FROM tags WHERE msgid IN (?)"))
+  }
+
+  test("identifiers with digits are kept") {
+    assert(SqlShape.normalize("SELECT t1.id\n  FROM topics t1") === "SELECT t1.id FROM topics t1")
+  }
+}